@@ -2,8 +2,10 @@ package com.example.googledrive;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class GoogleDriveIntegrationApplication {
     public static void main(String[] args) {
         SpringApplication.run(GoogleDriveIntegrationApplication.class, args);
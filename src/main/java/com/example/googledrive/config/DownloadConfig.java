@@ -0,0 +1,25 @@
+package com.example.googledrive.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+// How file downloads are served (download.*), independent of the outbound HTTP setup
+@Configuration
+@EnableConfigurationProperties(DownloadProperties.class)
+public class DownloadConfig {
+
+    @Autowired
+    private DownloadProperties downloadProperties;
+
+    // Drive's webContentLink is neither short-lived nor pre-authenticated, and the frontend
+    // downloads with fetch(), so a cross-origin redirect to it fails under CORS
+    @PostConstruct
+    public void validate() {
+        if (downloadProperties.modeFor(DownloadProperties.GOOGLE) == DownloadProperties.Mode.REDIRECT) {
+            throw new IllegalStateException("download.modes.google=redirect is not supported; "
+                + "only Graph's pre-authenticated download URLs are redirect-safe (use proxy)");
+        }
+    }
+}
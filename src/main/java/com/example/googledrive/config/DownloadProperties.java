@@ -0,0 +1,40 @@
+package com.example.googledrive.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "download")
+public class DownloadProperties {
+
+    // Keys of download.modes
+    public static final String GOOGLE = "google";
+    public static final String MICROSOFT = "microsoft";
+
+    public enum Mode {
+        // Bytes flow through this server (content cache, ranges, headers under our control)
+        PROXY,
+        // Clients are sent to the provider's own URL. Only Graph's @microsoft.graph.downloadUrl
+        // is pre-authenticated, so only microsoft may use it (checked at startup by DownloadConfig)
+        REDIRECT
+    }
+
+    // Keyed by provider ("google", "microsoft"), e.g. download.modes.microsoft=redirect
+    private Map<String, Mode> modes = new HashMap<>(Map.of(
+        GOOGLE, Mode.PROXY,
+        MICROSOFT, Mode.PROXY
+    ));
+
+    public Map<String, Mode> getModes() {
+        return modes;
+    }
+
+    public void setModes(Map<String, Mode> modes) {
+        this.modes = modes;
+    }
+
+    public Mode modeFor(String provider) {
+        return modes.getOrDefault(provider, Mode.PROXY);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.googledrive.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${drive.listing.prefetch-threads:8}")
+    private int listingPrefetchThreads;
+
+    @Value("${drive.sync.threads:4}")
+    private int syncThreads;
+
+    @Value("${listing.fanout.threads:32}")
+    private int fanoutThreads;
+
+    @Value("${microsoft.crawl.threads:32}")
+    private int crawlThreads;
+
+    @Value("${download.zip.threads:32}")
+    private int zipThreads;
+
+    @Value("${upload.max-active:8}")
+    private int maxActiveUploads;
+
+    // Fetches the next listing page while the current one is written to the client
+    @Bean
+    public ThreadPoolTaskExecutor driveListingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(listingPrefetchThreads);
+        executor.setMaxPoolSize(listingPrefetchThreads);
+        executor.setQueueCapacity(listingPrefetchThreads * 16);
+        executor.setThreadNamePrefix("drive-listing-");
+        return executor;
+    }
+
+    // Runs full crawls and delta syncs off the request threads
+    @Bean
+    public ThreadPoolTaskExecutor driveSyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(syncThreads);
+        executor.setMaxPoolSize(syncThreads);
+        executor.setQueueCapacity(10000);
+        executor.setThreadNamePrefix("drive-sync-");
+        return executor;
+    }
+
+    // Runs the per-provider calls of aggregated listings; a full queue fails fast rather than
+    // holding a request past its deadline
+    @Bean
+    public ThreadPoolTaskExecutor providerFanoutExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(fanoutThreads);
+        executor.setMaxPoolSize(fanoutThreads);
+        executor.setQueueCapacity(fanoutThreads * 8);
+        executor.setThreadNamePrefix("provider-fanout-");
+        return executor;
+    }
+
+    // Shared by all recursive Graph folder crawls; each crawl caps its own share of it
+    @Bean
+    public ThreadPoolTaskExecutor graphCrawlExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(crawlThreads);
+        executor.setMaxPoolSize(crawlThreads);
+        executor.setQueueCapacity(crawlThreads * 64);
+        executor.setThreadNamePrefix("graph-crawl-");
+        return executor;
+    }
+
+    // Prefetches the next files of ZIP downloads; each download caps its own share of it
+    @Bean
+    public ThreadPoolTaskExecutor zipPrefetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(zipThreads);
+        executor.setMaxPoolSize(zipThreads);
+        executor.setQueueCapacity(zipThreads * 8);
+        executor.setThreadNamePrefix("zip-prefetch-");
+        return executor;
+    }
+
+    // Sends upload chunks; an upload has at most one chunk in flight, so one thread each
+    @Bean
+    public ThreadPoolTaskExecutor uploadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxActiveUploads);
+        executor.setMaxPoolSize(maxActiveUploads);
+        executor.setQueueCapacity(maxActiveUploads);
+        executor.setThreadNamePrefix("upload-");
+        return executor;
+    }
+}
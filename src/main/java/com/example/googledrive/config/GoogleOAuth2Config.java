@@ -2,8 +2,7 @@ package com.example.googledrive.config;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.drive.DriveScopes;
@@ -12,8 +11,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.io.IOException;
-import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
 @Configuration
@@ -30,11 +27,6 @@ public class GoogleOAuth2Config {
 
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
 
-    @Bean
-    public NetHttpTransport httpTransport() throws GeneralSecurityException, IOException {
-        return GoogleNetHttpTransport.newTrustedTransport();
-    }
-
     @Bean
     public JsonFactory jsonFactory() {
         return JSON_FACTORY;
@@ -54,7 +46,7 @@ public class GoogleOAuth2Config {
 
     @Bean
     public GoogleAuthorizationCodeFlow googleAuthorizationCodeFlow(
-            NetHttpTransport httpTransport, 
+            HttpTransport httpTransport, 
             JsonFactory jsonFactory, 
             GoogleClientSecrets clientSecrets) {
         
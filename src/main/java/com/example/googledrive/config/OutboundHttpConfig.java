@@ -0,0 +1,90 @@
+package com.example.googledrive.config;
+
+import com.example.googledrive.service.AdaptiveRateLimiter;
+import com.example.googledrive.service.ProviderGuard;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// One set of long-lived, pooled clients for every call to Google and Microsoft, so
+// connections and TLS sessions are reused instead of set up per request.
+// Two differences from what callers had before. Redirects are not followed: the old
+// `new RestTemplate()` followed them for GETs, so anything that expects a 3xx to be
+// followed has to read Location itself (as GraphDownloadService does for /content).
+// And only the JDK client negotiates HTTP/2; Google API calls go over ApacheHttpTransport,
+// which speaks HTTP/1.1 and gets its reuse from the connection pool alone.
+@Configuration
+@EnableConfigurationProperties({OutboundHttpProperties.class, RateLimitProperties.class, ResilienceProperties.class})
+public class OutboundHttpConfig {
+
+    // Shared JDK client for Graph and identity calls: keep-alive pooling, HTTP/2 where the
+    // server offers it, redirects handed back to the caller
+    @Bean
+    public HttpClient outboundHttpClient(OutboundHttpProperties properties) {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()))
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+    }
+
+    // Used for Graph and the Microsoft identity endpoints
+    @Bean
+    public RestTemplate outboundRestTemplate(RestTemplateBuilder builder, HttpClient outboundHttpClient,
+                                             OutboundHttpProperties properties, AdaptiveRateLimiter rateLimiter,
+                                             ProviderGuard providerGuard, ObjectMapper objectMapper) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(outboundHttpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(properties.getReadTimeoutMs()));
+
+        // Rate limit, then circuit breaker and bulkhead, then per-host connection limit, per attempt
+        ClientHttpRequestInterceptor perHost = new PerHostLimitInterceptor(properties);
+        ClientHttpRequestInterceptor guarded = new ProviderGuardInterceptor(providerGuard, perHost);
+
+        return builder
+            .requestFactory(() -> requestFactory)
+            .additionalInterceptors(new RateLimitingInterceptor(rateLimiter, guarded, objectMapper))
+            .build();
+    }
+
+    // Google API client transport backed by a pooled Apache client with per-route limits
+    @Bean
+    public HttpTransport httpTransport(OutboundHttpProperties properties) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+            properties.getIdleTimeoutSeconds() * 5L, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(properties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerHost());
+        connectionManager.setValidateAfterInactivity(2000);
+        properties.getHostLimits().forEach((host, limit) ->
+            connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(host, 443, "https"), null, true), limit));
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(properties.getConnectTimeoutMs())
+            .setSocketTimeout(properties.getReadTimeoutMs())
+            .setConnectionRequestTimeout(properties.getAcquireTimeoutMs())
+            .build();
+
+        CloseableHttpClient client = ApacheHttpTransport.newDefaultHttpClientBuilder()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictIdleConnections(properties.getIdleTimeoutSeconds(), TimeUnit.SECONDS)
+            .build();
+
+        return new ApacheHttpTransport(client);
+    }
+}
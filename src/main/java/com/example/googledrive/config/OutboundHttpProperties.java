@@ -0,0 +1,80 @@
+package com.example.googledrive.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "outbound.http")
+public class OutboundHttpProperties {
+
+    private int connectTimeoutMs = 5000;
+    private int readTimeoutMs = 60000;
+    private int maxConnections = 200;
+    private int maxConnectionsPerHost = 50;
+    private int idleTimeoutSeconds = 60;
+    private int acquireTimeoutMs = 10000;
+
+    // Per-host overrides of maxConnectionsPerHost, e.g. outbound.http.host-limits[graph.microsoft.com]=100
+    private Map<String, Integer> hostLimits = new HashMap<>();
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    public int getAcquireTimeoutMs() {
+        return acquireTimeoutMs;
+    }
+
+    public void setAcquireTimeoutMs(int acquireTimeoutMs) {
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    public Map<String, Integer> getHostLimits() {
+        return hostLimits;
+    }
+
+    public void setHostLimits(Map<String, Integer> hostLimits) {
+        this.hostLimits = hostLimits;
+    }
+
+    public int limitFor(String host) {
+        return hostLimits.getOrDefault(host, maxConnectionsPerHost);
+    }
+}
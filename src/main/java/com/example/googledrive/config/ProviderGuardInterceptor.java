@@ -0,0 +1,84 @@
+package com.example.googledrive.config;
+
+import com.example.googledrive.service.ProviderGuard;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Puts each Graph attempt behind the provider's circuit breaker and bulkhead. The bulkhead
+// slot is held until the response is closed, like the per-host limit it wraps.
+public class ProviderGuardInterceptor implements ClientHttpRequestInterceptor {
+
+    private final ProviderGuard providerGuard;
+    private final ClientHttpRequestInterceptor downstream;
+
+    public ProviderGuardInterceptor(ProviderGuard providerGuard, ClientHttpRequestInterceptor downstream) {
+        this.providerGuard = providerGuard;
+        this.downstream = downstream;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        String provider = RateLimitingInterceptor.providerFor(request.getURI().getHost());
+        if (provider == null) {
+            return downstream.intercept(request, body, execution);
+        }
+
+        ProviderGuard.Call call = providerGuard.begin(provider);
+        try {
+            ClientHttpResponse response = downstream.intercept(request, body, execution);
+            // Server errors count against the provider; 4xx (429 included) are the caller's problem
+            call.record(response.getStatusCode().is5xxServerError());
+            return new GuardReleasingResponse(response, call);
+        } catch (IOException | RuntimeException e) {
+            call.release();
+            throw e;
+        }
+    }
+
+    private static class GuardReleasingResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private final ProviderGuard.Call call;
+
+        GuardReleasingResponse(ClientHttpResponse delegate, ProviderGuard.Call call) {
+            this.delegate = delegate;
+            this.call = call;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                call.release();
+            }
+        }
+    }
+}
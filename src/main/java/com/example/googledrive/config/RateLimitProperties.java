@@ -0,0 +1,120 @@
+package com.example.googledrive.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "outbound.rate-limit")
+public class RateLimitProperties {
+
+    private int maxRetries = 4;
+    private long baseBackoffMs = 500;
+    private long maxBackoffMs = 30000;
+    // How long a request may queue for a permit before it fails
+    private long maxQueueWaitMs = 60000;
+
+    // Keyed by provider ("google", "microsoft"), e.g. outbound.rate-limit.providers.google.rate=20
+    private Map<String, Limit> providers = new HashMap<>(Map.of(
+        "google", new Limit(20, 40, 500, 1000),
+        "microsoft", new Limit(10, 20, 300, 600)
+    ));
+
+    public static class Limit {
+        // Requests per second per user, and the burst a user may spend at once
+        private double rate;
+        private double burst;
+        // Ceiling for all users of the provider together
+        private double providerRate;
+        private double providerBurst;
+
+        public Limit() {}
+
+        public Limit(double rate, double burst, double providerRate, double providerBurst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.providerRate = providerRate;
+            this.providerBurst = providerBurst;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public double getBurst() {
+            return burst;
+        }
+
+        public void setBurst(double burst) {
+            this.burst = burst;
+        }
+
+        public double getProviderRate() {
+            return providerRate;
+        }
+
+        public void setProviderRate(double providerRate) {
+            this.providerRate = providerRate;
+        }
+
+        public double getProviderBurst() {
+            return providerBurst;
+        }
+
+        public void setProviderBurst(double providerBurst) {
+            this.providerBurst = providerBurst;
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getBaseBackoffMs() {
+        return baseBackoffMs;
+    }
+
+    public void setBaseBackoffMs(long baseBackoffMs) {
+        this.baseBackoffMs = baseBackoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    public void setMaxBackoffMs(long maxBackoffMs) {
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    public long getMaxQueueWaitMs() {
+        return maxQueueWaitMs;
+    }
+
+    public void setMaxQueueWaitMs(long maxQueueWaitMs) {
+        this.maxQueueWaitMs = maxQueueWaitMs;
+    }
+
+    public Map<String, Limit> getProviders() {
+        return providers;
+    }
+
+    public void setProviders(Map<String, Limit> providers) {
+        this.providers = providers;
+    }
+
+    public Limit limitFor(String provider) {
+        Limit limit = providers.get(provider);
+        if (limit == null) {
+            throw new IllegalArgumentException("No rate limit configured for provider " + provider);
+        }
+        return limit;
+    }
+}
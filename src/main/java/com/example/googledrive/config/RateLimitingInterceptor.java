@@ -0,0 +1,142 @@
+package com.example.googledrive.config;
+
+import com.example.googledrive.service.AdaptiveRateLimiter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Set;
+
+// Runs Graph calls through the adaptive rate limiter and retries 429/503 responses after
+// Retry-After or a jittered backoff. Wraps the per-host limit rather than sitting next to it
+// in the chain, so every retry takes a fresh connection slot and waiting for a rate permit
+// never holds one.
+public class RateLimitingInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final Set<HttpMethod> IDEMPOTENT = Set.of(
+        HttpMethod.GET, HttpMethod.HEAD, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.OPTIONS);
+
+    private final AdaptiveRateLimiter rateLimiter;
+    private final ClientHttpRequestInterceptor downstream;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitingInterceptor(AdaptiveRateLimiter rateLimiter, ClientHttpRequestInterceptor downstream,
+                                   ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.downstream = downstream;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        String provider = providerFor(request.getURI().getHost());
+        if (provider == null) {
+            return downstream.intercept(request, body, execution);
+        }
+        String principal = principalOf(request.getHeaders());
+
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire(provider, principal);
+            // This is the only registered interceptor, so the execution the per-host limit
+            // calls into always goes straight to the wire and can be repeated
+            ClientHttpResponse response = downstream.intercept(request, body, execution);
+
+            int status = response.getStatusCode().value();
+            if (status < 400) {
+                rateLimiter.onSuccess(provider, principal);
+                return response;
+            }
+
+            Duration retryAfter = parseRetryAfter(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            boolean throttled = status == 429
+                || (status == 503 && (retryAfter != null || IDEMPOTENT.contains(request.getMethod())));
+            if (!throttled) {
+                return response;
+            }
+
+            // Always record the throttle so the rate adapts, even when out of retries
+            rateLimiter.onThrottled(provider, principal, retryAfter, attempt);
+            if (attempt >= rateLimiter.getMaxRetries()) {
+                return response;
+            }
+            response.close();
+        }
+    }
+
+    // Provider a host belongs to, or null for hosts that aren't limited
+    public static String providerFor(String host) {
+        if (host == null) {
+            return null;
+        }
+        if (host.equals("graph.microsoft.com")) {
+            return AdaptiveRateLimiter.MICROSOFT;
+        }
+        if (host.endsWith("googleapis.com")) {
+            return AdaptiveRateLimiter.GOOGLE;
+        }
+        return null;
+    }
+
+    // Graph access tokens carry the user's object id; anything else is keyed by a token hash,
+    // which still separates users, just not across token refreshes
+    private String principalOf(HttpHeaders headers) {
+        String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return "anonymous";
+        }
+        String token = authorization.substring("Bearer ".length());
+
+        String[] parts = token.split("\\.");
+        if (parts.length == 3) {
+            try {
+                JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+                if (claims.hasNonNull("oid")) {
+                    return claims.path("tid").asText("") + ":" + claims.get("oid").asText();
+                }
+            } catch (IllegalArgumentException | IOException e) {
+                // Not a JWT we can read, fall through to the hash
+            }
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Accepts both delta-seconds and HTTP-date forms
+    public static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(),
+                    ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.googledrive.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "outbound.resilience")
+public class ResilienceProperties {
+
+    // Bulkhead: concurrent calls per provider, and how long a call may wait for a slot
+    private int maxConcurrent = 64;
+    private long maxWaitMs = 2000;
+    // Per-provider overrides of maxConcurrent, e.g. outbound.resilience.provider-limits.microsoft=32
+    private Map<String, Integer> providerLimits = new HashMap<>();
+
+    // Circuit breaker over the last windowSize calls
+    private int windowSize = 50;
+    private int minimumCalls = 20;
+    private int failureRatePercent = 50;
+    // Calls slower than this count as failures
+    private long slowCallMs = 10000;
+    private long openMs = 30000;
+    private int halfOpenCalls = 3;
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    public void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    public Map<String, Integer> getProviderLimits() {
+        return providerLimits;
+    }
+
+    public void setProviderLimits(Map<String, Integer> providerLimits) {
+        this.providerLimits = providerLimits;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public int getFailureRatePercent() {
+        return failureRatePercent;
+    }
+
+    public void setFailureRatePercent(int failureRatePercent) {
+        this.failureRatePercent = failureRatePercent;
+    }
+
+    public long getSlowCallMs() {
+        return slowCallMs;
+    }
+
+    public void setSlowCallMs(long slowCallMs) {
+        this.slowCallMs = slowCallMs;
+    }
+
+    public long getOpenMs() {
+        return openMs;
+    }
+
+    public void setOpenMs(long openMs) {
+        this.openMs = openMs;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public int limitFor(String provider) {
+        return providerLimits.getOrDefault(provider, maxConcurrent);
+    }
+}
@@ -4,6 +4,7 @@ import com.example.googledrive.dto.TokenResponseDto;
 import com.example.googledrive.model.User;
 import com.example.googledrive.model.UserToken;
 import com.example.googledrive.repository.UserRepository;
+import com.example.googledrive.service.DriveClientRegistry;
 import com.example.googledrive.service.TokenService;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +30,9 @@ public class AuthController {
     @Autowired
     private TokenService tokenService;
 
+    @Autowired
+    private DriveClientRegistry driveClientRegistry;
+
     @Value("${google.client.id}")
     private String googleClientId;
 
@@ -131,6 +135,7 @@ public class AuthController {
             Optional<User> userOpt = userRepository.findById(userId);
             if (userOpt.isPresent()) {
                 tokenService.deleteTokens(userOpt.get());
+                driveClientRegistry.evict(userOpt.get());
             }
         }
         
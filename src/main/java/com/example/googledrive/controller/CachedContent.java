@@ -0,0 +1,38 @@
+package com.example.googledrive.controller;
+
+import com.example.googledrive.service.FileContentCache;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.file.Path;
+
+// Response bodies for blobs in the content cache. On Tomcat the file is handed to the
+// connector, which sends it with sendfile once the handler returns, so the bytes never pass
+// through the JVM; elsewhere they are copied with FileChannel.transferTo.
+final class CachedContent {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private CachedContent() {}
+
+    // Null when the connector will send the file; the response must not get another body
+    static StreamingResponseBody body(HttpServletRequest request, FileContentCache cache,
+                                      Path blob, long start, long length) {
+        // Tomcat would send the file even if Spring turned the response into a 304, so
+        // conditional requests take the copying path
+        boolean conditional = request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+            || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))
+                && "GET".equals(request.getMethod()) && !conditional) {
+            request.setAttribute(SENDFILE_FILENAME, blob.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return null;
+        }
+        return out -> cache.transfer(blob, start, length, out);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.googledrive.controller;
+
+import com.example.googledrive.service.ConditionalResponseCache;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+
+// JSON responses carrying an ETag. Spring answers a matching If-None-Match on a GET with
+// 304 and no body; no-cache makes browsers revalidate instead of reusing stale listings.
+// Thumbnail URLs carrying the item version (?v=) never change content, so the browser caches
+// them outright; without a version the browser has to come back each time.
+final class ConditionalResponses {
+
+    private static final Duration THUMBNAIL_MAX_AGE = Duration.ofDays(7);
+
+    private ConditionalResponses() {}
+
+    static ResponseEntity<byte[]> ok(ConditionalResponseCache.Payload payload) {
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .eTag(payload.etag())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(payload.json());
+    }
+
+    static ResponseEntity<byte[]> thumbnail(byte[] jpeg, boolean versioned) {
+        return ResponseEntity.ok()
+            .cacheControl(versioned ? CacheControl.maxAge(THUMBNAIL_MAX_AGE).cachePrivate() : CacheControl.noCache().cachePrivate())
+            .contentType(MediaType.IMAGE_JPEG)
+            .body(jpeg);
+    }
+}
@@ -1,17 +1,36 @@
 package com.example.googledrive.controller;
 
+import com.example.googledrive.dto.BatchMetadataResultDto;
+import com.example.googledrive.dto.BulkSaveResultDto;
 import com.example.googledrive.dto.FileMetadataDto;
+import com.example.googledrive.dto.SavedFileDto;
+import com.example.googledrive.dto.SavedFilePageDto;
 import com.example.googledrive.model.DriveFile;
 import com.example.googledrive.model.User;
 import com.example.googledrive.repository.UserRepository;
+import com.example.googledrive.model.DriveSyncState;
+import com.example.googledrive.service.ConditionalResponseCache;
+import com.example.googledrive.service.DriveSyncService;
+import com.example.googledrive.service.FileContentCache;
 import com.example.googledrive.service.GoogleDriveService;
+import com.example.googledrive.service.ThumbnailService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -20,14 +39,35 @@ import java.util.Optional;
 @RequestMapping("/api/drive")
 public class DriveController {
 
+    private static final int MAX_BATCH_METADATA_IDS = 5000;
+    private static final String GOOGLE_NATIVE_PREFIX = "application/vnd.google-apps.";
+
     @Autowired
     private GoogleDriveService googleDriveService;
 
+    @Autowired
+    private DriveSyncService driveSyncService;
+
+    @Autowired
+    private ConditionalResponseCache conditionalResponseCache;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private FileContentCache fileContentCache;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping("/files")
-    public ResponseEntity<?> getUserFiles(HttpSession session) {
+    public ResponseEntity<?> getUserFiles(@RequestParam(required = false) String parentId,
+                                          @RequestParam(defaultValue = "0") int page,
+                                          @RequestParam(defaultValue = "100") int size,
+                                          HttpSession session) {
         Long userId = (Long) session.getAttribute("userId");
         if (userId == null) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
@@ -39,12 +79,48 @@ public class DriveController {
         }
 
         try {
-            List<FileMetadataDto> files = googleDriveService.getUserFiles(userOpt.get());
-            return ResponseEntity.ok(files);
+            User user = userOpt.get();
+            // Serve from the local index once the initial crawl has finished
+            if (driveSyncService.isIndexed(user)) {
+                int pageSize = Math.min(Math.max(size, 1), 1000);
+                return ConditionalResponses.ok(conditionalResponseCache.payload(
+                    googleDriveService.getIndexedFiles(user, parentId, Math.max(page, 0), pageSize)));
+            }
+            return ConditionalResponses.ok(googleDriveService.getUserFilesPayload(user));
         } catch (Exception e) {
-            return ResponseEntity.status(500)
-                .body(Map.of("error", "Failed to fetch files: " + e.getMessage()));
+            return ProviderErrors.failure(e, "Failed to fetch files: ");
+        }
+    }
+
+    @GetMapping("/files/stream")
+    public ResponseEntity<?> streamUserFiles(HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        User user = userOpt.get();
+        StreamingResponseBody body = out -> {
+            try {
+                googleDriveService.streamAllUserFiles(user, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                // Status is already committed, so report the failure as a trailing record
+                out.write(objectMapper.writeValueAsBytes(
+                    Map.of("error", "Failed to fetch files: " + e.getMessage())));
+                out.write('\n');
+            }
+        };
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
     }
 
     @GetMapping("/files/{fileId}")
@@ -60,11 +136,38 @@ public class DriveController {
         }
 
         try {
-            FileMetadataDto file = googleDriveService.getFileMetadata(userOpt.get(), fileId);
-            return ResponseEntity.ok(file);
+            return ConditionalResponses.ok(googleDriveService.getFileMetadataPayload(userOpt.get(), fileId));
         } catch (Exception e) {
-            return ResponseEntity.status(500)
-                .body(Map.of("error", "Failed to fetch file metadata: " + e.getMessage()));
+            return ProviderErrors.failure(e, "Failed to fetch file metadata: ");
+        }
+    }
+
+    @GetMapping("/files/{fileId}/thumbnail")
+    public ResponseEntity<?> getThumbnail(@PathVariable String fileId,
+                                          @RequestParam(defaultValue = "medium") String size,
+                                          @RequestParam(name = "v", required = false) String version,
+                                          HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        try {
+            byte[] thumbnail = thumbnailService.getDriveThumbnail(userOpt.get(), fileId, version,
+                ThumbnailService.Size.parse(size));
+            if (thumbnail == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "No thumbnail available"));
+            }
+            return ConditionalResponses.thumbnail(thumbnail, version != null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Failed to fetch thumbnail: ");
         }
     }
 
@@ -95,6 +198,59 @@ public class DriveController {
         }
     }
 
+    @PostMapping("/files/bulk")
+    public ResponseEntity<?> saveFileMetadataBulk(@RequestBody List<FileMetadataDto> files,
+                                                  HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        try {
+            BulkSaveResultDto result = googleDriveService.saveFileMetadataBulk(userOpt.get(), files);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.status(500)
+                .body(Map.of("error", "Failed to save file metadata: " + e.getMessage()));
+        }
+    }
+
+    // Metadata for many file IDs, fetched from Drive in batch requests of 100
+    @PostMapping("/files/metadata")
+    public ResponseEntity<?> getFileMetadataBatch(@RequestBody Map<String, List<String>> request,
+                                                  HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        List<String> fileIds = request.get("fileIds");
+        if (fileIds == null || fileIds.isEmpty()) {
+            return ResponseEntity.status(400).body(Map.of("error", "fileIds is required"));
+        }
+        if (fileIds.size() > MAX_BATCH_METADATA_IDS) {
+            return ResponseEntity.status(400)
+                .body(Map.of("error", "At most " + MAX_BATCH_METADATA_IDS + " fileIds per request"));
+        }
+
+        try {
+            BatchMetadataResultDto result = googleDriveService.getFileMetadataBatch(userOpt.get(), fileIds);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Failed to fetch file metadata: ");
+        }
+    }
+
     @GetMapping("/saved-files")
     public ResponseEntity<?> getSavedFiles(HttpSession session) {
         Long userId = (Long) session.getAttribute("userId");
@@ -108,7 +264,7 @@ public class DriveController {
         }
 
         try {
-            List<DriveFile> savedFiles = googleDriveService.getUserSavedFiles(userOpt.get());
+            List<SavedFileDto> savedFiles = googleDriveService.getUserSavedFiles(userOpt.get());
             return ResponseEntity.ok(savedFiles);
         } catch (Exception e) {
             return ResponseEntity.status(500)
@@ -116,8 +272,83 @@ public class DriveController {
         }
     }
 
+    @GetMapping("/saved-files/page")
+    public ResponseEntity<?> getSavedFilesPage(@RequestParam(defaultValue = "created") String sort,
+                                               @RequestParam(defaultValue = "desc") String direction,
+                                               @RequestParam(defaultValue = "100") int limit,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) String mimeType,
+                                               @RequestParam(required = false) String namePrefix,
+                                               HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        try {
+            SavedFilePageDto page = googleDriveService.getSavedFilesPage(userOpt.get(), sort, direction, limit,
+                                                                         cursor, mimeType, namePrefix);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500)
+                .body(Map.of("error", "Failed to fetch saved files: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/sync")
+    public ResponseEntity<?> requestSync(HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        boolean queued = driveSyncService.requestSync(userOpt.get());
+        return ResponseEntity.accepted().body(Map.of(
+            "queued", queued,
+            "message", queued ? "Sync started" : "Sync already running"
+        ));
+    }
+
+    @GetMapping("/sync")
+    public ResponseEntity<?> getSyncStatus(HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        User user = userOpt.get();
+        Optional<DriveSyncState> stateOpt = driveSyncService.getSyncState(user);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("running", driveSyncService.isSyncRunning(user));
+        response.put("indexed", stateOpt.map(DriveSyncState::isFullSyncCompleted).orElse(false));
+        response.put("lastSyncedAt", stateOpt.map(DriveSyncState::getLastSyncedAt).orElse(null));
+        response.put("lastError", stateOpt.map(DriveSyncState::getLastError).orElse(null));
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/files/{fileId}/download")
-    public ResponseEntity<?> downloadFile(@PathVariable String fileId, HttpSession session) {
+    public ResponseEntity<?> downloadFile(@PathVariable String fileId,
+                                          @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+                                          @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                          HttpSession session, HttpServletRequest request) {
         Long userId = (Long) session.getAttribute("userId");
         if (userId == null) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
@@ -128,20 +359,107 @@ public class DriveController {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
         }
 
+        User user = userOpt.get();
+
         try {
-            byte[] fileContent = googleDriveService.downloadFile(userOpt.get(), fileId);
-            
+            FileMetadataDto metadata = googleDriveService.getDownloadMetadata(user, fileId);
+            // Docs, Sheets, Slides etc. have no stored bytes; Drive only serves them through export,
+            // so answer before committing to a stream that can only fail
+            if (metadata.getMimeType() != null && metadata.getMimeType().startsWith(GOOGLE_NATIVE_PREFIX)) {
+                return ResponseEntity.status(400).body(Map.of("error",
+                    "Google Docs, Sheets and Slides files can't be downloaded as-is; export them to another format from Google Drive"));
+            }
+            Long size = metadata.getSize();
+            String etag = metadata.getChecksum() != null ? "\"" + metadata.getChecksum() + "\""
+                : metadata.getRevision() != null ? "\"" + metadata.getRevision() + "\"" : null;
+
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "file-" + fileId);
-            
-            return ResponseEntity.ok()
+            headers.setContentType(metadata.getMimeType() != null
+                ? MediaType.parseMediaType(metadata.getMimeType())
+                : MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(metadata.getName() != null ? metadata.getName() : "file-" + fileId, StandardCharsets.UTF_8)
+                .build());
+            if (etag != null) {
+                headers.setETag(etag);
+            }
+            if (metadata.getModifiedTime() != null) {
+                headers.setLastModified(metadata.getModifiedTime());
+            }
+
+            // Ranges need a known length
+            if (size == null) {
+                return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(streamBody(user, fileId, null, null));
+            }
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            // The metadata call above already proved the user can read this revision
+            String cacheKey = fileContentCache.key("google", metadata.getChecksum(), metadata.getRevision(), size);
+            Optional<Path> cached = cacheKey != null ? fileContentCache.lookup(cacheKey) : Optional.empty();
+
+            HttpRange range = RangeRequests.singleRange(rangeHeader, ifRange, etag, metadata.getModifiedTime());
+
+            if (range == null) {
+                headers.setContentLength(size);
+                return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(cached.isPresent()
+                        ? CachedContent.body(request, fileContentCache, cached.get(), 0, size)
+                        : cachingBody(user, fileId, cacheKey, size));
+            }
+
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+            }
+
+            headers.setContentLength(end - start + 1);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
                 .headers(headers)
-                .body(fileContent);
-                
+                .body(cached.isPresent()
+                    ? CachedContent.body(request, fileContentCache, cached.get(), start, end - start + 1)
+                    : streamBody(user, fileId, start, end));
+
         } catch (Exception e) {
-            return ResponseEntity.status(500)
-                .body(Map.of("error", "Failed to download file: " + e.getMessage()));
+            return ProviderErrors.failure(e, "Failed to download file: ");
+        }
+    }
+
+    private StreamingResponseBody streamBody(User user, String fileId, Long start, Long end) {
+        return out -> {
+            try {
+                googleDriveService.streamFileContent(user, fileId, start, end, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to download file: " + e.getMessage(), e);
+            }
+        };
+    }
+
+    // Full downloads of cacheable files are kept in the content cache as they stream
+    private StreamingResponseBody cachingBody(User user, String fileId, String cacheKey, long size) {
+        if (cacheKey == null) {
+            return streamBody(user, fileId, null, null);
         }
+        return out -> {
+            try {
+                fileContentCache.streamAndStore(cacheKey, size, out,
+                    target -> googleDriveService.streamFileContent(user, fileId, null, null, target));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to download file: " + e.getMessage(), e);
+            }
+        };
     }
 }
@@ -0,0 +1,111 @@
+package com.example.googledrive.controller;
+
+import com.example.googledrive.dto.FileMetadataDto;
+import com.example.googledrive.dto.UnifiedFileListDto;
+import com.example.googledrive.model.User;
+import com.example.googledrive.repository.UserRepository;
+import com.example.googledrive.service.UnifiedListingService;
+import com.example.googledrive.service.ZipExportService;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/files")
+public class FileListingController {
+
+    private static final int MAX_ZIP_ITEMS = 1000;
+    private static final Set<String> ZIP_PROVIDERS = Set.of("google", "onedrive", "sharepoint");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UnifiedListingService unifiedListingService;
+
+    @Autowired
+    private ZipExportService zipExportService;
+
+    @Value("${listing.fanout.deadline-ms:5000}")
+    private long defaultDeadlineMs;
+
+    @Value("${listing.fanout.max-deadline-ms:30000}")
+    private long maxDeadlineMs;
+
+    // One listing across every connected provider; always 200 with whatever finished in time
+    @GetMapping
+    public ResponseEntity<?> listAllFiles(@RequestParam(required = false) Long deadlineMs, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        long deadline = deadlineMs != null ? Math.max(1, Math.min(deadlineMs, maxDeadlineMs)) : defaultDeadlineMs;
+        UnifiedFileListDto result = unifiedListingService.listAll(userOpt.get(), Duration.ofMillis(deadline));
+        return ResponseEntity.ok(result);
+    }
+
+    // Takes entries as returned by the listing (provider, id and siteId for SharePoint) and
+    // streams them back as one ZIP; failed files are listed in manifest.json inside it
+    @PostMapping("/zip")
+    public ResponseEntity<?> downloadZip(@RequestBody List<FileMetadataDto> files, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        if (files == null || files.isEmpty()) {
+            return ResponseEntity.status(400).body(Map.of("error", "No files given"));
+        }
+        if (files.size() > MAX_ZIP_ITEMS) {
+            return ResponseEntity.status(400).body(Map.of("error", "At most " + MAX_ZIP_ITEMS + " files per ZIP"));
+        }
+        for (FileMetadataDto file : files) {
+            if (file.getId() == null || file.getId().isBlank() || !ZIP_PROVIDERS.contains(file.getProvider())) {
+                return ResponseEntity.status(400).body(Map.of("error", "Each file needs an id and a provider (google, onedrive or sharepoint)"));
+            }
+            if ("sharepoint".equals(file.getProvider()) && (file.getSiteId() == null || file.getSiteId().isBlank())) {
+                return ResponseEntity.status(400).body(Map.of("error", "SharePoint files need a siteId"));
+            }
+        }
+
+        ZipExportService.Reservation reservation;
+        try {
+            reservation = zipExportService.reserve(userOpt.get());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).header("Retry-After", "5").body(Map.of("error", e.getMessage()));
+        }
+        StreamingResponseBody body = out -> zipExportService.writeZip(reservation, files, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/zip"))
+            .header("Content-Disposition", ContentDisposition.attachment().filename("files.zip").build().toString())
+            .body(body);
+    }
+}
@@ -1,23 +1,45 @@
 package com.example.googledrive.controller;
 
+import com.example.googledrive.config.DownloadProperties;
+import com.example.googledrive.dto.FileMetadataDto;
 import com.example.googledrive.dto.TokenResponseDto;
 import com.example.googledrive.model.TokenProvider;
 import com.example.googledrive.model.User;
 import com.example.googledrive.model.UserToken;
 import com.example.googledrive.repository.UserRepository;
+import com.example.googledrive.service.ConditionalResponseCache;
+import com.example.googledrive.service.FileContentCache;
+import com.example.googledrive.service.GraphBatchService;
+import com.example.googledrive.service.GraphCrawlService;
+import com.example.googledrive.service.GraphDownloadService;
+import com.example.googledrive.service.GraphSyncService;
 import com.example.googledrive.service.MicrosoftTokenService;
+import com.example.googledrive.service.ThumbnailService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -25,12 +47,41 @@ import java.util.Optional;
 @RequestMapping("/api/microsoft")
 public class MicrosoftAuthController {
 
+    private static final int MAX_BULK_ITEMS = 1000;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RestTemplate restTemplate;
+
     @Autowired
     private MicrosoftTokenService microsoftTokenService;
 
+    @Autowired
+    private GraphSyncService graphSyncService;
+
+    @Autowired
+    private GraphCrawlService graphCrawlService;
+
+    @Autowired
+    private GraphBatchService graphBatchService;
+
+    @Autowired
+    private ConditionalResponseCache conditionalResponseCache;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private GraphDownloadService graphDownloadService;
+
+    @Autowired
+    private FileContentCache fileContentCache;
+
+    @Autowired
+    private DownloadProperties downloadProperties;
+
     @Value("${microsoft.client.id}")
     private String microsoftClientId;
 
@@ -98,24 +149,40 @@ public class MicrosoftAuthController {
         }
 
         try {
-            String accessToken = microsoftTokenService.getValidAccessToken(userOpt.get());
-            
-            RestTemplate restTemplate = new RestTemplate();
+            User user = userOpt.get();
+            // Served from the delta-synced store once the first sync has finished
+            if (graphSyncService.isIndexed(user, GraphSyncService.MY_DRIVE)) {
+                return ConditionalResponses.ok(conditionalResponseCache.payload(
+                    Map.of("value", graphSyncService.getChildren(user, GraphSyncService.MY_DRIVE, null))));
+            }
+            graphSyncService.requestSync(user, GraphSyncService.MY_DRIVE);
+
+            return ConditionalResponses.ok(fetchGraphJson(user, "https://graph.microsoft.com/v1.0/me/drive/root/children"));
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Failed to fetch files: ");
+        }
+    }
+
+    // Graph JSON passed through as-is, revalidated with the ETag of the previous response
+    private ConditionalResponseCache.Payload fetchGraphJson(User user, String url) throws Exception {
+        return conditionalResponseCache.fetch(user.getId(), "graph:" + url, ifNoneMatch -> {
             HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    "https://graph.microsoft.com/v1.0/me/drive/root/children",
+            headers.setBearerAuth(microsoftTokenService.getValidAccessToken(user));
+            if (ifNoneMatch != null) {
+                headers.setIfNoneMatch(ifNoneMatch);
+            }
+
+            ResponseEntity<byte[]> response = restTemplate.exchange(
+                    url,
                     HttpMethod.GET,
-                    entity,
-                    Map.class
+                    new HttpEntity<>(headers),
+                    byte[].class
             );
-            
-            return ResponseEntity.ok(response.getBody());
-        } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Failed to fetch files: " + e.getMessage()));
-        }
+            if (response.getStatusCode().value() == 304) {
+                return null;
+            }
+            return new ConditionalResponseCache.Upstream(response.getBody(), response.getHeaders().getETag());
+        });
     }
 
 
@@ -142,22 +209,10 @@ public class MicrosoftAuthController {
                 return ResponseEntity.badRequest().build();
             }
 
-            // Get SharePoint-specific token using the requested scopes
-            String sharePointToken = microsoftTokenService.getSharePointToken(user, scopes);
-
-            if (sharePointToken != null) {
-                // Create token response (expires in 1 hour by default for SharePoint tokens)
-                long expiresIn = 3600; // 1 hour in seconds
-                LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(expiresIn);
-
-                TokenResponseDto response = new TokenResponseDto(
-                        sharePointToken,
-                        null, // No refresh token for SharePoint-specific tokens
-                        expiresIn,
-                        "Bearer",
-                        expiresAt
-                );
+            // Get SharePoint-specific token using the requested scopes; expiry comes from the identity endpoint
+            TokenResponseDto response = microsoftTokenService.getSharePointToken(user, scopes);
 
+            if (response != null && response.getAccessToken() != null) {
                 return ResponseEntity.ok(response);
             } else {
                 return ResponseEntity.status(500).build();
@@ -194,7 +249,25 @@ public class MicrosoftAuthController {
     }
 
     @GetMapping("/files/{fileId}/download")
-    public ResponseEntity<?> downloadFile(@PathVariable String fileId, HttpSession session) {
+    public ResponseEntity<?> downloadFile(@PathVariable String fileId,
+                                          @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+                                          @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                          HttpSession session, HttpServletRequest request) {
+        return serveDownload(GraphSyncService.MY_DRIVE, fileId, rangeHeader, ifRange, session, request);
+    }
+
+    @GetMapping("/sites/{siteId}/items/{itemId}/download")
+    public ResponseEntity<?> downloadSiteFile(@PathVariable String siteId,
+                                              @PathVariable String itemId,
+                                              @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+                                              @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                              HttpSession session, HttpServletRequest request) {
+        return serveDownload(GraphSyncService.siteDriveKey(siteId), itemId, rangeHeader, ifRange, session, request);
+    }
+
+    // Streams item content from the content cache or the storage host, honouring single ranges
+    private ResponseEntity<?> serveDownload(String driveKey, String itemId, String rangeHeader, String ifRange,
+                                            HttpSession session, HttpServletRequest request) {
         Long userId = (Long) session.getAttribute("userId");
         if (userId == null) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
@@ -206,24 +279,102 @@ public class MicrosoftAuthController {
         }
 
         try {
-            String accessToken = microsoftTokenService.getValidAccessToken(userOpt.get());
-            
-            RestTemplate restTemplate = new RestTemplate();
+            User user = userOpt.get();
+            // Fetched with the user's token on every request, cache hit or not
+            FileMetadataDto metadata = graphDownloadService.getDownloadMetadata(user, driveKey, itemId);
+            String contentUrl = graphDownloadService.resolveContentUrl(user, driveKey, metadata);
+            if (contentUrl == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "Item has no downloadable content"));
+            }
+            // The URL is pre-authenticated and short-lived, so clients can fetch it directly
+            if (downloadProperties.modeFor(DownloadProperties.MICROSOFT) == DownloadProperties.Mode.REDIRECT) {
+                return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(contentUrl))
+                    .cacheControl(CacheControl.noStore())
+                    .build();
+            }
+            Long size = metadata.getSize();
+            String etag = metadata.getRevision() != null ? "\"" + metadata.getRevision().replace("\"", "") + "\"" : null;
+
             HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    "https://graph.microsoft.com/v1.0/me/drive/items/" + fileId + "/content",
-                    HttpMethod.GET,
-                    entity,
-                    Map.class
-            );
-            
-            return ResponseEntity.ok(response.getBody());
+            headers.setContentType(metadata.getMimeType() != null
+                ? MediaType.parseMediaType(metadata.getMimeType())
+                : MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(metadata.getName() != null ? metadata.getName() : "file-" + itemId, StandardCharsets.UTF_8)
+                .build());
+            if (etag != null) {
+                headers.setETag(etag);
+            }
+            if (metadata.getModifiedTime() != null) {
+                headers.setLastModified(metadata.getModifiedTime());
+            }
+
+            if (size == null) {
+                return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(streamBody(contentUrl, null, null));
+            }
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            String cacheKey = fileContentCache.key("microsoft", metadata.getChecksum(), metadata.getRevision(), size);
+            Optional<Path> cached = cacheKey != null ? fileContentCache.lookup(cacheKey) : Optional.empty();
+
+            HttpRange range = RangeRequests.singleRange(rangeHeader, ifRange, etag, metadata.getModifiedTime());
+            if (range == null) {
+                headers.setContentLength(size);
+                return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(cached.isPresent()
+                        ? CachedContent.body(request, fileContentCache, cached.get(), 0, size)
+                        : cachingBody(contentUrl, cacheKey, size));
+            }
+
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+            }
+
+            headers.setContentLength(end - start + 1);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(headers)
+                .body(cached.isPresent()
+                    ? CachedContent.body(request, fileContentCache, cached.get(), start, end - start + 1)
+                    : streamBody(contentUrl, start, end));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Failed to download file: " + e.getMessage()));
+            return ProviderErrors.failure(e, "Failed to download file: ");
+        }
+    }
+
+    private StreamingResponseBody streamBody(String contentUrl, Long start, Long end) {
+        return out -> graphDownloadService.streamContent(contentUrl, start, end, out);
+    }
+
+    // Full downloads of cacheable files are kept in the content cache as they stream
+    private StreamingResponseBody cachingBody(String contentUrl, String cacheKey, long size) {
+        if (cacheKey == null) {
+            return streamBody(contentUrl, null, null);
         }
+        return out -> {
+            try {
+                fileContentCache.streamAndStore(cacheKey, size, out,
+                    target -> graphDownloadService.streamContent(contentUrl, null, null, target));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to download file: " + e.getMessage(), e);
+            }
+        };
     }
 
     @GetMapping("/sites")
@@ -239,23 +390,9 @@ public class MicrosoftAuthController {
         }
 
         try {
-            String accessToken = microsoftTokenService.getValidAccessToken(userOpt.get());
-            
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    "https://graph.microsoft.com/v1.0/sites?search=*",
-                    HttpMethod.GET,
-                    entity,
-                    Map.class
-            );
-            
-            return ResponseEntity.ok(response.getBody());
+            return ConditionalResponses.ok(fetchGraphJson(userOpt.get(), "https://graph.microsoft.com/v1.0/sites?search=*"));
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Failed to fetch SharePoint sites: " + e.getMessage()));
+            return ProviderErrors.failure(e, "Failed to fetch SharePoint sites: ");
         }
     }
 
@@ -272,23 +409,17 @@ public class MicrosoftAuthController {
         }
 
         try {
-            String accessToken = microsoftTokenService.getValidAccessToken(userOpt.get());
-            
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    "https://graph.microsoft.com/v1.0/sites/" + siteId + "/drive/root/children",
-                    HttpMethod.GET,
-                    entity,
-                    Map.class
-            );
-            
-            return ResponseEntity.ok(response.getBody());
+            User user = userOpt.get();
+            String driveKey = GraphSyncService.siteDriveKey(siteId);
+            if (graphSyncService.isIndexed(user, driveKey)) {
+                return ConditionalResponses.ok(conditionalResponseCache.payload(
+                    Map.of("value", graphSyncService.getChildren(user, driveKey, null))));
+            }
+            graphSyncService.requestSync(user, driveKey);
+
+            return ConditionalResponses.ok(fetchGraphJson(user, "https://graph.microsoft.com/v1.0/sites/" + siteId + "/drive/root/children"));
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Failed to fetch SharePoint site files: " + e.getMessage()));
+            return ProviderErrors.failure(e, "Failed to fetch SharePoint site files: ");
         }
     }
 
@@ -305,23 +436,151 @@ public class MicrosoftAuthController {
         }
 
         try {
-            String accessToken = microsoftTokenService.getValidAccessToken(userOpt.get());
+            User user = userOpt.get();
+            String driveKey = GraphSyncService.siteDriveKey(siteId);
+            if (graphSyncService.isIndexed(user, driveKey)) {
+                return ConditionalResponses.ok(conditionalResponseCache.payload(
+                    Map.of("value", graphSyncService.getChildren(user, driveKey, folderId))));
+            }
+            graphSyncService.requestSync(user, driveKey);
 
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.setBearerAuth(accessToken);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
+            return ConditionalResponses.ok(fetchGraphJson(user, "https://graph.microsoft.com/v1.0/sites/" + siteId + "/drive/items/" + folderId + "/children"));
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Failed to fetch SharePoint folder contents: ");
+        }
+    }
 
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    "https://graph.microsoft.com/v1.0/sites/" + siteId + "/drive/items/" + folderId + "/children",
-                    HttpMethod.GET,
-                    entity,
-                    Map.class
-            );
+    // Metadata for many items in one go, sent to Graph as $batch calls of 20
+    @PostMapping("/items/metadata")
+    public ResponseEntity<?> getItemsMetadata(@RequestBody Map<String, Object> request, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        Object ids = request.get("itemIds");
+        if (!(ids instanceof List<?> idList) || idList.isEmpty()) {
+            return ResponseEntity.status(400).body(Map.of("error", "itemIds is required"));
+        }
+        if (idList.size() > MAX_BULK_ITEMS) {
+            return ResponseEntity.status(400).body(Map.of("error", "At most " + MAX_BULK_ITEMS + " itemIds per request"));
+        }
+
+        String siteId = (String) request.get("siteId");
+        String driveKey = siteId != null ? GraphSyncService.siteDriveKey(siteId) : GraphSyncService.MY_DRIVE;
+
+        try {
+            List<String> itemIds = idList.stream().map(String::valueOf).toList();
+            List<Object> items = new ArrayList<>();
+            Map<String, Object> errors = new LinkedHashMap<>();
+            graphBatchService.getItems(userOpt.get(), driveKey, itemIds).forEach((itemId, response) -> {
+                if (response.isSuccess()) {
+                    items.add(response.body());
+                } else {
+                    Map<String, Object> error = new LinkedHashMap<>();
+                    error.put("status", response.status());
+                    error.put("error", response.body() != null ? response.body().path("error").path("message").asText(null) : null);
+                    errors.put(itemId, error);
+                }
+            });
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("items", items);
+            result.put("errors", errors);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Failed to fetch item metadata: ");
+        }
+    }
+
+    @GetMapping("/crawl")
+    public ResponseEntity<?> crawlDrive(@RequestParam(required = false) String folderId,
+                                        @RequestParam(required = false) Integer maxDepth,
+                                        @RequestParam(required = false) Integer maxItems,
+                                        HttpSession session) {
+        return startCrawl(GraphSyncService.MY_DRIVE, folderId, maxDepth, maxItems, session);
+    }
+
+    @GetMapping("/sites/{siteId}/crawl")
+    public ResponseEntity<?> crawlSiteDrive(@PathVariable String siteId,
+                                            @RequestParam(required = false) String folderId,
+                                            @RequestParam(required = false) Integer maxDepth,
+                                            @RequestParam(required = false) Integer maxItems,
+                                            HttpSession session) {
+        return startCrawl(GraphSyncService.siteDriveKey(siteId), folderId, maxDepth, maxItems, session);
+    }
+
+    // Streams the whole subtree as NDJSON, one Graph item per line plus a trailing summary
+    private ResponseEntity<?> startCrawl(String driveKey, String folderId, Integer maxDepth, Integer maxItems,
+                                         HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        User user = userOpt.get();
+        if (microsoftTokenService.getTokenByUser(user).isEmpty()) {
+            return ResponseEntity.status(401).body(Map.of("error", "Microsoft account not connected"));
+        }
 
-            return ResponseEntity.ok(response.getBody());
+        StreamingResponseBody body = out -> graphCrawlService.crawl(user, driveKey, folderId, maxDepth, maxItems, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+
+    @GetMapping("/items/{itemId}/thumbnail")
+    public ResponseEntity<?> getThumbnail(@PathVariable String itemId,
+                                          @RequestParam(defaultValue = "medium") String size,
+                                          @RequestParam(name = "v", required = false) String version,
+                                          HttpSession session) {
+        return serveThumbnail(GraphSyncService.MY_DRIVE, itemId, size, version, session);
+    }
+
+    @GetMapping("/sites/{siteId}/items/{itemId}/thumbnail")
+    public ResponseEntity<?> getSiteThumbnail(@PathVariable String siteId,
+                                              @PathVariable String itemId,
+                                              @RequestParam(defaultValue = "medium") String size,
+                                              @RequestParam(name = "v", required = false) String version,
+                                              HttpSession session) {
+        return serveThumbnail(GraphSyncService.siteDriveKey(siteId), itemId, size, version, session);
+    }
+
+    private ResponseEntity<?> serveThumbnail(String driveKey, String itemId, String size, String version,
+                                             HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        try {
+            byte[] thumbnail = thumbnailService.getGraphThumbnail(userOpt.get(), driveKey, itemId, version,
+                ThumbnailService.Size.parse(size));
+            if (thumbnail == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "No thumbnail available"));
+            }
+            return ConditionalResponses.thumbnail(thumbnail, version != null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Failed to fetch SharePoint folder contents: " + e.getMessage()));
+            return ProviderErrors.failure(e, "Failed to fetch thumbnail: ");
         }
     }
 
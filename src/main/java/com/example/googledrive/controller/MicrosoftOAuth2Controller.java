@@ -3,6 +3,7 @@ package com.example.googledrive.controller;
 import com.example.googledrive.model.TokenProvider;
 import com.example.googledrive.model.User;
 import com.example.googledrive.repository.UserRepository;
+import com.example.googledrive.service.GraphSyncService;
 import com.example.googledrive.service.MicrosoftTokenService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -28,9 +29,15 @@ public class MicrosoftOAuth2Controller {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RestTemplate restTemplate;
+
     @Autowired
     private MicrosoftTokenService microsoftTokenService;
 
+    @Autowired
+    private GraphSyncService graphSyncService;
+
     @Value("${microsoft.client.id}")
     private String microsoftClientId;
 
@@ -47,8 +54,6 @@ public class MicrosoftOAuth2Controller {
     public ResponseEntity<String> handleCallback(@RequestParam("code") String code, HttpSession session) {
         try {
             // Exchange code for access token
-            RestTemplate restTemplate = new RestTemplate();
-            
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
             
@@ -108,6 +113,11 @@ public class MicrosoftOAuth2Controller {
                     
                     // Save tokens
                     microsoftTokenService.saveTokens(user, accessToken, refreshToken, expiresIn);
+
+                    // Start mirroring the user's OneDrive in the background
+                    if (!graphSyncService.isIndexed(user, GraphSyncService.MY_DRIVE)) {
+                        graphSyncService.requestSync(user, GraphSyncService.MY_DRIVE);
+                    }
                     
                     // Set user in session
                     session.setAttribute("userId", user.getId());
@@ -0,0 +1,84 @@
+package com.example.googledrive.controller;
+
+import com.example.googledrive.service.AccessTokenCache;
+import com.example.googledrive.service.AdaptiveRateLimiter;
+import com.example.googledrive.service.ConditionalResponseCache;
+import com.example.googledrive.service.FileContentCache;
+import com.example.googledrive.service.ProviderGuard;
+import com.example.googledrive.service.ThumbnailService;
+import com.example.googledrive.service.TokenRefreshCoordinator;
+import com.example.googledrive.service.TokenRefreshScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/monitoring")
+public class MonitoringController {
+
+    @Autowired
+    private AccessTokenCache accessTokenCache;
+
+    @Autowired
+    private TokenRefreshCoordinator tokenRefreshCoordinator;
+
+    @Autowired
+    private TokenRefreshScheduler tokenRefreshScheduler;
+
+    @Autowired
+    private AdaptiveRateLimiter adaptiveRateLimiter;
+
+    @Autowired
+    private ProviderGuard providerGuard;
+
+    @Autowired
+    private ConditionalResponseCache conditionalResponseCache;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private FileContentCache fileContentCache;
+
+    @GetMapping("/token-cache")
+    public ResponseEntity<Map<String, Object>> getTokenCacheStats() {
+        return ResponseEntity.ok(accessTokenCache.getStats());
+    }
+
+    @GetMapping("/token-refresh")
+    public ResponseEntity<Map<String, Object>> getTokenRefreshStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(tokenRefreshCoordinator.getStats());
+        stats.put("background", tokenRefreshScheduler.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/rate-limits")
+    public ResponseEntity<Map<String, Object>> getRateLimitStats() {
+        return ResponseEntity.ok(adaptiveRateLimiter.getStats());
+    }
+
+    @GetMapping("/providers")
+    public ResponseEntity<Map<String, Object>> getProviderStats() {
+        return ResponseEntity.ok(providerGuard.getStats());
+    }
+
+    @GetMapping("/conditional-cache")
+    public ResponseEntity<Map<String, Object>> getConditionalCacheStats() {
+        return ResponseEntity.ok(conditionalResponseCache.getStats());
+    }
+
+    @GetMapping("/thumbnail-cache")
+    public ResponseEntity<Map<String, Object>> getThumbnailCacheStats() {
+        return ResponseEntity.ok(thumbnailService.getStats());
+    }
+
+    @GetMapping("/content-cache")
+    public ResponseEntity<Map<String, Object>> getContentCacheStats() {
+        return ResponseEntity.ok(fileContentCache.getStats());
+    }
+}
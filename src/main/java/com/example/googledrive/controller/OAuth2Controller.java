@@ -1,12 +1,13 @@
 package com.example.googledrive.controller;
 
 import com.example.googledrive.config.GoogleOAuth2Config;
+import com.example.googledrive.config.OutboundHttpProperties;
 import com.example.googledrive.model.User;
 import com.example.googledrive.repository.UserRepository;
+import com.example.googledrive.service.DriveSyncService;
 import com.example.googledrive.service.TokenService;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
 import com.google.api.services.oauth2.Oauth2;
 import com.google.api.services.oauth2.model.Userinfo;
@@ -37,9 +38,18 @@ public class OAuth2Controller {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private java.net.http.HttpClient outboundHttpClient;
+
+    @Autowired
+    private OutboundHttpProperties outboundHttpProperties;
+
     @Autowired
     private TokenService tokenService;
 
+    @Autowired
+    private DriveSyncService driveSyncService;
+
     @GetMapping("/authorize")
     public ResponseEntity<Map<String, String>> authorize() {
         String authorizationUrl = googleAuthFlow.newAuthorizationUrl()
@@ -73,38 +83,15 @@ public class OAuth2Controller {
             String refreshToken = tokenResponse.getRefreshToken();
             Long expiresIn = tokenResponse.getExpiresInSeconds();
 
-            ///  Test
-            // ✅ For testing, override with 5 minutes (300 seconds)
-                        Long testExpiresInSeconds = 300L;
-
-            // Create Credential and override expiry
-                        GoogleCredential credential = new GoogleCredential.Builder()
-                                .setTransport(googleAuthFlow.getTransport())
-                                .setJsonFactory(googleAuthFlow.getJsonFactory())
-                                .setClientSecrets(googleConfig.getClientId(), "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")
-                                .build()
-                                .setFromTokenResponse(tokenResponse);
-
-            // Manually override the expiry time
-                        credential.setExpirationTimeMilliseconds(
-                                System.currentTimeMillis() + (testExpiresInSeconds)
-                        );
-
-
-            expiresIn = credential.getExpiresInSeconds();
-            // Store credential and use it
-            ///  Test
-
-
             // Get user info from Google using direct HTTP request
             String userInfoUrl = "https://www.googleapis.com/oauth2/v2/userinfo?access_token=" + accessToken;
             
-            java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
             java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder()
                 .uri(java.net.URI.create(userInfoUrl))
+                .timeout(java.time.Duration.ofMillis(outboundHttpProperties.getReadTimeoutMs()))
                 .build();
             
-            java.net.http.HttpResponse<String> response = client.send(request, 
+            java.net.http.HttpResponse<String> response = outboundHttpClient.send(request, 
                 java.net.http.HttpResponse.BodyHandlers.ofString());
             
             if (response.statusCode() != 200) {
@@ -134,6 +121,11 @@ public class OAuth2Controller {
             // Save tokens
             tokenService.saveTokens(user, accessToken, refreshToken, expiresIn);
 
+            // Build the local index in the background on first login
+            if (!driveSyncService.isIndexed(user)) {
+                driveSyncService.requestSync(user);
+            }
+
             // Store user in session
             session.setAttribute("userId", user.getId());
             session.setAttribute("userEmail", user.getEmail());
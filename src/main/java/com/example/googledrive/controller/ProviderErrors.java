@@ -0,0 +1,32 @@
+package com.example.googledrive.controller;
+
+import com.example.googledrive.service.ProviderUnavailableException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.Map;
+
+// Error responses for calls that reach Drive or Graph. A provider that is failing fast
+// answers 503 with Retry-After, so clients back off instead of reporting a server error.
+final class ProviderErrors {
+
+    private ProviderErrors() {}
+
+    static ResponseEntity<Map<String, String>> failure(Exception e, String message) {
+        return ProviderUnavailableException.causeOf(e)
+            .map(ProviderErrors::unavailable)
+            .orElseGet(() -> ResponseEntity.status(500).body(Map.of("error", message + e.getMessage())));
+    }
+
+    static ResponseEntity<Map<String, String>> unavailable(ProviderUnavailableException e) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(503);
+        Duration retryAfter = e.getRetryAfter();
+        if (retryAfter != null) {
+            // Round up so clients never retry before the circuit half-opens
+            long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        }
+        return response.body(Map.of("error", e.getMessage(), "provider", e.getProvider()));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.googledrive.controller;
+
+import org.springframework.http.HttpRange;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+// Range and If-Range handling shared by the download endpoints
+final class RangeRequests {
+
+    private RangeRequests() {}
+
+    // The single range to serve, or null for the whole file. Multipart byteranges aren't
+    // worth it here, and malformed headers are ignored, so both get the whole file.
+    static HttpRange singleRange(String rangeHeader, String ifRange, String etag, Instant lastModified) {
+        if (rangeHeader == null || !ifRangeMatches(ifRange, etag, lastModified)) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // If-Range carries either an entity tag or an HTTP date; the range only applies
+    // when it still identifies the current representation.
+    private static boolean ifRangeMatches(String ifRange, String etag, Instant lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            Instant since = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return lastModified != null && since.getEpochSecond() == lastModified.getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.googledrive.controller;
+
+import com.example.googledrive.dto.UploadRequestDto;
+import com.example.googledrive.dto.UploadStatusDto;
+import com.example.googledrive.model.User;
+import com.example.googledrive.repository.UserRepository;
+import com.example.googledrive.service.UploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+// Uploads go in two steps: POST creates a session at the provider, then PUT sends the file
+// bytes as the raw request body. A PUT that breaks off can be resumed: GET the upload for
+// its offset and PUT the rest of the file with ?offset=<that offset>.
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadController {
+
+    @Autowired
+    private UploadService uploadService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @PostMapping
+    public ResponseEntity<?> createUpload(@RequestBody UploadRequestDto request, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        try {
+            return ResponseEntity.ok(uploadService.createSession(userOpt.get(), request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Failed to start upload: ");
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getActiveUploads(HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        List<UploadStatusDto> uploads = uploadService.getActiveUploads(userOpt.get());
+        return ResponseEntity.ok(uploads);
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<?> getUpload(@PathVariable Long uploadId, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        try {
+            return respond(uploadService.getStatus(userOpt.get(), uploadId));
+        } catch (UploadService.SessionExpiredException e) {
+            return ResponseEntity.status(410).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Failed to get upload status: ");
+        }
+    }
+
+    // Not @RequestBody: the body is read straight from the request, a chunk at a time
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<?> uploadContent(@PathVariable Long uploadId,
+                                           @RequestParam(defaultValue = "0") long offset,
+                                           HttpSession session, HttpServletRequest request) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+        if (offset < 0) {
+            return ResponseEntity.status(400).body(Map.of("error", "offset must not be negative"));
+        }
+
+        try {
+            return respond(uploadService.upload(userOpt.get(), uploadId, offset, request.getInputStream()));
+        } catch (UploadService.SessionExpiredException e) {
+            return ResponseEntity.status(410).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).header("Retry-After", "5").body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ProviderErrors.failure(e, "Upload failed: ");
+        }
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<?> cancelUpload(@PathVariable Long uploadId, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
+        }
+
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+        }
+
+        try {
+            return respond(uploadService.cancel(userOpt.get(), uploadId));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static ResponseEntity<?> respond(Optional<UploadStatusDto> status) {
+        return status.<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.status(404).body(Map.of("error", "Upload not found")));
+    }
+}
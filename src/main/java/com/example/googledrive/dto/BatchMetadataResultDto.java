@@ -0,0 +1,36 @@
+package com.example.googledrive.dto;
+
+import java.util.List;
+import java.util.Map;
+
+public class BatchMetadataResultDto {
+    private List<FileMetadataDto> files;
+    // Keyed by the requested file ID
+    private Map<String, ItemErrorDto> errors;
+
+    // Default constructor
+    public BatchMetadataResultDto() {}
+
+    // Constructor
+    public BatchMetadataResultDto(List<FileMetadataDto> files, Map<String, ItemErrorDto> errors) {
+        this.files = files;
+        this.errors = errors;
+    }
+
+    // Getters and setters
+    public List<FileMetadataDto> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<FileMetadataDto> files) {
+        this.files = files;
+    }
+
+    public Map<String, ItemErrorDto> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(Map<String, ItemErrorDto> errors) {
+        this.errors = errors;
+    }
+}
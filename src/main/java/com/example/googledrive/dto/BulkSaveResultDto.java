@@ -0,0 +1,52 @@
+package com.example.googledrive.dto;
+
+public class BulkSaveResultDto {
+    private int received;
+    private int inserted;
+    private int updated;
+    private int skipped;
+
+    // Default constructor
+    public BulkSaveResultDto() {}
+
+    // Constructor
+    public BulkSaveResultDto(int received, int inserted, int updated, int skipped) {
+        this.received = received;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.skipped = skipped;
+    }
+
+    // Getters and setters
+    public int getReceived() {
+        return received;
+    }
+
+    public void setReceived(int received) {
+        this.received = received;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(int inserted) {
+        this.inserted = inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(int skipped) {
+        this.skipped = skipped;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.googledrive.dto;
 
+import java.time.Instant;
+
 public class FileMetadataDto {
     private String id;
     private String name;
@@ -7,6 +9,12 @@ public class FileMetadataDto {
     private Long size;
     private String downloadUrl;
     private String thumbnailUrl;
+    private String checksum;
+    private String revision;
+    private Instant modifiedTime;
+    // Set on aggregated listings: "google", "onedrive" or "sharepoint"
+    private String provider;
+    private String siteId;
 
     // Default constructor
     public FileMetadataDto() {}
@@ -68,4 +76,44 @@ public class FileMetadataDto {
     public void setThumbnailUrl(String thumbnailUrl) {
         this.thumbnailUrl = thumbnailUrl;
     }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public void setRevision(String revision) {
+        this.revision = revision;
+    }
+
+    public Instant getModifiedTime() {
+        return modifiedTime;
+    }
+
+    public void setModifiedTime(Instant modifiedTime) {
+        this.modifiedTime = modifiedTime;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getSiteId() {
+        return siteId;
+    }
+
+    public void setSiteId(String siteId) {
+        this.siteId = siteId;
+    }
 }
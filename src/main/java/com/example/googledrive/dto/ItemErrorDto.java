@@ -0,0 +1,32 @@
+package com.example.googledrive.dto;
+
+public class ItemErrorDto {
+    private int status;
+    private String error;
+
+    // Default constructor
+    public ItemErrorDto() {}
+
+    // Constructor
+    public ItemErrorDto(int status, String error) {
+        this.status = status;
+        this.error = error;
+    }
+
+    // Getters and setters
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.googledrive.dto;
+
+public class ProviderStatusDto {
+    private String provider;
+    // ok, partial, timeout, error or not_connected
+    private String status;
+    private int itemCount;
+    private long elapsedMs;
+    private String error;
+
+    // Default constructor
+    public ProviderStatusDto() {}
+
+    // Constructor
+    public ProviderStatusDto(String provider, String status, int itemCount, long elapsedMs, String error) {
+        this.provider = provider;
+        this.status = status;
+        this.itemCount = itemCount;
+        this.elapsedMs = elapsedMs;
+        this.error = error;
+    }
+
+    // Getters and setters
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.googledrive.dto;
+
+import java.time.LocalDateTime;
+
+// Read-only projection of a saved drive_files row; never touches the User association
+public class SavedFileDto {
+    private Long id;
+    private String googleFileId;
+    private String fileName;
+    private String mimeType;
+    private Long fileSize;
+    private String downloadUrl;
+    private LocalDateTime createdAt;
+
+    // Default constructor
+    public SavedFileDto() {}
+
+    // Constructor used by JPQL constructor expressions
+    public SavedFileDto(Long id, String googleFileId, String fileName, String mimeType,
+                        Long fileSize, String downloadUrl, LocalDateTime createdAt) {
+        this.id = id;
+        this.googleFileId = googleFileId;
+        this.fileName = fileName;
+        this.mimeType = mimeType;
+        this.fileSize = fileSize;
+        this.downloadUrl = downloadUrl;
+        this.createdAt = createdAt;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getGoogleFileId() {
+        return googleFileId;
+    }
+
+    public void setGoogleFileId(String googleFileId) {
+        this.googleFileId = googleFileId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getDownloadUrl() {
+        return downloadUrl;
+    }
+
+    public void setDownloadUrl(String downloadUrl) {
+        this.downloadUrl = downloadUrl;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.googledrive.dto;
+
+import java.util.List;
+
+public class SavedFilePageDto {
+    private List<SavedFileDto> items;
+    private String nextCursor;
+
+    // Default constructor
+    public SavedFilePageDto() {}
+
+    // Constructor
+    public SavedFilePageDto(List<SavedFileDto> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and setters
+    public List<SavedFileDto> getItems() {
+        return items;
+    }
+
+    public void setItems(List<SavedFileDto> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
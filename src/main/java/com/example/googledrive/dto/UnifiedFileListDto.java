@@ -0,0 +1,44 @@
+package com.example.googledrive.dto;
+
+import java.util.List;
+
+public class UnifiedFileListDto {
+    private List<FileMetadataDto> files;
+    private List<ProviderStatusDto> providers;
+    private boolean complete;
+
+    // Default constructor
+    public UnifiedFileListDto() {}
+
+    // Constructor
+    public UnifiedFileListDto(List<FileMetadataDto> files, List<ProviderStatusDto> providers, boolean complete) {
+        this.files = files;
+        this.providers = providers;
+        this.complete = complete;
+    }
+
+    // Getters and setters
+    public List<FileMetadataDto> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<FileMetadataDto> files) {
+        this.files = files;
+    }
+
+    public List<ProviderStatusDto> getProviders() {
+        return providers;
+    }
+
+    public void setProviders(List<ProviderStatusDto> providers) {
+        this.providers = providers;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.googledrive.dto;
+
+public class UploadRequestDto {
+    // google, onedrive or sharepoint
+    private String provider;
+    private String siteId;
+    // Folder to upload into; the drive root when null
+    private String parentId;
+    private String name;
+    private String mimeType;
+    private Long size;
+
+    // Default constructor
+    public UploadRequestDto() {}
+
+    // Constructor
+    public UploadRequestDto(String provider, String siteId, String parentId, String name, String mimeType, Long size) {
+        this.provider = provider;
+        this.siteId = siteId;
+        this.parentId = parentId;
+        this.name = name;
+        this.mimeType = mimeType;
+        this.size = size;
+    }
+
+    // Getters and setters
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getSiteId() {
+        return siteId;
+    }
+
+    public void setSiteId(String siteId) {
+        this.siteId = siteId;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(String parentId) {
+        this.parentId = parentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+}
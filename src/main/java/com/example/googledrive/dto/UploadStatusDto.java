@@ -0,0 +1,96 @@
+package com.example.googledrive.dto;
+
+import java.time.LocalDateTime;
+
+public class UploadStatusDto {
+    private Long id;
+    private String provider;
+    private String name;
+    private long size;
+    // Bytes the provider has; the next PUT starts here
+    private long offset;
+    private String status;
+    private String fileId;
+    private LocalDateTime expiresAt;
+
+    // Default constructor
+    public UploadStatusDto() {}
+
+    // Constructor
+    public UploadStatusDto(Long id, String provider, String name, long size, long offset,
+                           String status, String fileId, LocalDateTime expiresAt) {
+        this.id = id;
+        this.provider = provider;
+        this.name = name;
+        this.size = size;
+        this.offset = offset;
+        this.status = status;
+        this.fileId = fileId;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
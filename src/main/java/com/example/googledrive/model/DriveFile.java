@@ -4,10 +4,20 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "drive_files")
+@Table(name = "drive_files",
+       uniqueConstraints = @UniqueConstraint(name = "uk_drive_files_user_file", columnNames = {"user_id", "google_file_id"}),
+       indexes = {
+           // Keyset pagination of saved files, one index per sort order
+           @Index(name = "idx_drive_files_saved_name", columnList = "user_id, saved, file_name, id"),
+           @Index(name = "idx_drive_files_saved_size", columnList = "user_id, saved, file_size, id"),
+           @Index(name = "idx_drive_files_saved_created", columnList = "user_id, saved, created_at, id"),
+           @Index(name = "idx_drive_files_user_mime", columnList = "user_id, mime_type")
+       })
 public class DriveFile {
+    // Pooled sequence instead of IDENTITY so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "drive_files_seq")
+    @SequenceGenerator(name = "drive_files_seq", sequenceName = "drive_files_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -32,6 +42,29 @@ public class DriveFile {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Sync index columns; rows the user never saved have saved = false
+    @Column(name = "parent_id")
+    private String parentId;
+
+    @Column(name = "modified_time")
+    private LocalDateTime modifiedTime;
+
+    @Column(name = "trashed", nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
+    private boolean trashed;
+
+    @Column(name = "saved", nullable = false, columnDefinition = "BOOLEAN DEFAULT TRUE")
+    private boolean saved = true;
+
+    @Column(name = "indexed_at")
+    private LocalDateTime indexedAt;
+
+    // Drive's file version and whether Drive has a thumbnail; the listing builds the proxy URL from them
+    @Column(name = "version")
+    private Long version;
+
+    @Column(name = "has_thumbnail", nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
+    private boolean hasThumbnail;
+
     // Default constructor
     public DriveFile() {
         this.createdAt = LocalDateTime.now();
@@ -112,4 +145,60 @@ public class DriveFile {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(String parentId) {
+        this.parentId = parentId;
+    }
+
+    public LocalDateTime getModifiedTime() {
+        return modifiedTime;
+    }
+
+    public void setModifiedTime(LocalDateTime modifiedTime) {
+        this.modifiedTime = modifiedTime;
+    }
+
+    public boolean isTrashed() {
+        return trashed;
+    }
+
+    public void setTrashed(boolean trashed) {
+        this.trashed = trashed;
+    }
+
+    public boolean isSaved() {
+        return saved;
+    }
+
+    public void setSaved(boolean saved) {
+        this.saved = saved;
+    }
+
+    public LocalDateTime getIndexedAt() {
+        return indexedAt;
+    }
+
+    public void setIndexedAt(LocalDateTime indexedAt) {
+        this.indexedAt = indexedAt;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public boolean isHasThumbnail() {
+        return hasThumbnail;
+    }
+
+    public void setHasThumbnail(boolean hasThumbnail) {
+        this.hasThumbnail = hasThumbnail;
+    }
 }
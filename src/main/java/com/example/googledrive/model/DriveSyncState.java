@@ -0,0 +1,112 @@
+package com.example.googledrive.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "drive_sync_states",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "provider", "drive_id"}))
+public class DriveSyncState {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "provider", nullable = false)
+    private TokenProvider provider;
+
+    @Column(name = "drive_id", nullable = false)
+    private String driveId;
+
+    // Drive startPageToken or Graph deltaLink to resume from
+    @Column(name = "page_token", columnDefinition = "TEXT")
+    private String pageToken;
+
+    @Column(name = "full_sync_completed", nullable = false)
+    private boolean fullSyncCompleted;
+
+    @Column(name = "last_synced_at")
+    private LocalDateTime lastSyncedAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    // Default constructor
+    public DriveSyncState() {}
+
+    // Constructor
+    public DriveSyncState(User user, TokenProvider provider, String driveId) {
+        this.user = user;
+        this.provider = provider;
+        this.driveId = driveId;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public TokenProvider getProvider() {
+        return provider;
+    }
+
+    public void setProvider(TokenProvider provider) {
+        this.provider = provider;
+    }
+
+    public String getDriveId() {
+        return driveId;
+    }
+
+    public void setDriveId(String driveId) {
+        this.driveId = driveId;
+    }
+
+    public String getPageToken() {
+        return pageToken;
+    }
+
+    public void setPageToken(String pageToken) {
+        this.pageToken = pageToken;
+    }
+
+    public boolean isFullSyncCompleted() {
+        return fullSyncCompleted;
+    }
+
+    public void setFullSyncCompleted(boolean fullSyncCompleted) {
+        this.fullSyncCompleted = fullSyncCompleted;
+    }
+
+    public LocalDateTime getLastSyncedAt() {
+        return lastSyncedAt;
+    }
+
+    public void setLastSyncedAt(LocalDateTime lastSyncedAt) {
+        this.lastSyncedAt = lastSyncedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.googledrive.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "graph_drive_items",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "drive_key", "item_id"}),
+       indexes = @Index(name = "idx_graph_items_parent", columnList = "user_id, drive_key, parent_id"))
+public class GraphDriveItem {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    // "me" for the user's OneDrive, "site:{siteId}" for a SharePoint site drive
+    @Column(name = "drive_key", nullable = false)
+    private String driveKey;
+
+    @Column(name = "remote_drive_id")
+    private String remoteDriveId;
+
+    @Column(name = "item_id", nullable = false)
+    private String itemId;
+
+    @Column(name = "parent_id")
+    private String parentId;
+
+    @Column(name = "root_item", nullable = false)
+    private boolean rootItem;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "mime_type")
+    private String mimeType;
+
+    @Column(name = "size")
+    private Long size;
+
+    @Column(name = "folder", nullable = false)
+    private boolean folder;
+
+    @Column(name = "child_count")
+    private Integer childCount;
+
+    @Column(name = "web_url", columnDefinition = "TEXT")
+    private String webUrl;
+
+    @Column(name = "e_tag")
+    private String eTag;
+
+    @Column(name = "c_tag")
+    private String cTag;
+
+    @Column(name = "quick_xor_hash")
+    private String quickXorHash;
+
+    @Column(name = "last_modified")
+    private LocalDateTime lastModified;
+
+    @Column(name = "indexed_at")
+    private LocalDateTime indexedAt;
+
+    // Default constructor
+    public GraphDriveItem() {}
+
+    // Constructor
+    public GraphDriveItem(User user, String driveKey, String itemId) {
+        this.user = user;
+        this.driveKey = driveKey;
+        this.itemId = itemId;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public String getDriveKey() {
+        return driveKey;
+    }
+
+    public void setDriveKey(String driveKey) {
+        this.driveKey = driveKey;
+    }
+
+    public String getRemoteDriveId() {
+        return remoteDriveId;
+    }
+
+    public void setRemoteDriveId(String remoteDriveId) {
+        this.remoteDriveId = remoteDriveId;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(String itemId) {
+        this.itemId = itemId;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(String parentId) {
+        this.parentId = parentId;
+    }
+
+    public boolean isRootItem() {
+        return rootItem;
+    }
+
+    public void setRootItem(boolean rootItem) {
+        this.rootItem = rootItem;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public boolean isFolder() {
+        return folder;
+    }
+
+    public void setFolder(boolean folder) {
+        this.folder = folder;
+    }
+
+    public Integer getChildCount() {
+        return childCount;
+    }
+
+    public void setChildCount(Integer childCount) {
+        this.childCount = childCount;
+    }
+
+    public String getWebUrl() {
+        return webUrl;
+    }
+
+    public void setWebUrl(String webUrl) {
+        this.webUrl = webUrl;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    public String getCTag() {
+        return cTag;
+    }
+
+    public void setCTag(String cTag) {
+        this.cTag = cTag;
+    }
+
+    public String getQuickXorHash() {
+        return quickXorHash;
+    }
+
+    public void setQuickXorHash(String quickXorHash) {
+        this.quickXorHash = quickXorHash;
+    }
+
+    public LocalDateTime getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(LocalDateTime lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public LocalDateTime getIndexedAt() {
+        return indexedAt;
+    }
+
+    public void setIndexedAt(LocalDateTime indexedAt) {
+        this.indexedAt = indexedAt;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.googledrive.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// A resumable upload to Drive or Graph. The provider's session URL is kept so an upload
+// interrupted by a disconnect or restart carries on from the last byte the provider has.
+@Entity
+@Table(name = "upload_sessions",
+       indexes = @Index(name = "idx_upload_sessions_expires", columnList = "expires_at"))
+public class UploadSession {
+
+    public enum Status { ACTIVE, COMPLETED, CANCELLED, EXPIRED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "provider", nullable = false)
+    private TokenProvider provider;
+
+    // Graph drive key (me or site:<id>); null for Google
+    @Column(name = "drive_key")
+    private String driveKey;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "mime_type")
+    private String mimeType;
+
+    @Column(name = "total_size", nullable = false)
+    private long totalSize;
+
+    // Pre-authenticated for Graph, bearer token still required for Drive
+    @Column(name = "upload_url", nullable = false, columnDefinition = "TEXT")
+    private String uploadUrl;
+
+    @Column(name = "committed_bytes", nullable = false)
+    private long committedBytes;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status = Status.ACTIVE;
+
+    @Column(name = "result_file_id")
+    private String resultFileId;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    // Default constructor
+    public UploadSession() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    // Constructor
+    public UploadSession(User user, TokenProvider provider, String driveKey, String fileName, String mimeType, long totalSize) {
+        this();
+        this.user = user;
+        this.provider = provider;
+        this.driveKey = driveKey;
+        this.fileName = fileName;
+        this.mimeType = mimeType;
+        this.totalSize = totalSize;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public TokenProvider getProvider() {
+        return provider;
+    }
+
+    public void setProvider(TokenProvider provider) {
+        this.provider = provider;
+    }
+
+    public String getDriveKey() {
+        return driveKey;
+    }
+
+    public void setDriveKey(String driveKey) {
+        this.driveKey = driveKey;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public void setTotalSize(long totalSize) {
+        this.totalSize = totalSize;
+    }
+
+    public String getUploadUrl() {
+        return uploadUrl;
+    }
+
+    public void setUploadUrl(String uploadUrl) {
+        this.uploadUrl = uploadUrl;
+    }
+
+    public long getCommittedBytes() {
+        return committedBytes;
+    }
+
+    public void setCommittedBytes(long committedBytes) {
+        this.committedBytes = committedBytes;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getResultFileId() {
+        return resultFileId;
+    }
+
+    public void setResultFileId(String resultFileId) {
+        this.resultFileId = resultFileId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,16 +1,43 @@
 package com.example.googledrive.repository;
 
+import com.example.googledrive.dto.SavedFileDto;
 import com.example.googledrive.model.DriveFile;
 import com.example.googledrive.model.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface DriveFileRepository extends JpaRepository<DriveFile, Long> {
+public interface DriveFileRepository extends JpaRepository<DriveFile, Long>, DriveFileRepositoryCustom {
     List<DriveFile> findByUser(User user);
     List<DriveFile> findByUserId(Long userId);
     Optional<DriveFile> findByUserAndGoogleFileId(User user, String googleFileId);
+    List<DriveFile> findByUserAndSavedTrue(User user);
+    @Query("select new com.example.googledrive.dto.SavedFileDto(" +
+           "f.id, f.googleFileId, f.fileName, f.mimeType, f.fileSize, f.downloadUrl, f.createdAt) " +
+           "from DriveFile f where f.user.id = :userId and f.saved = true order by f.createdAt desc, f.id desc")
+    List<SavedFileDto> findSavedFilesByUserId(@Param("userId") Long userId);
+    List<DriveFile> findByUserAndGoogleFileIdIn(User user, Collection<String> googleFileIds);
+    Page<DriveFile> findByUserAndTrashedFalse(User user, Pageable pageable);
+    Page<DriveFile> findByUserAndParentIdAndTrashedFalse(User user, String parentId, Pageable pageable);
+
+    // Drops index rows a full crawl didn't see again; saved rows are kept and marked trashed instead
+    @Modifying
+    @Query("delete from DriveFile f where f.user = :user and f.saved = false " +
+           "and (f.indexedAt is null or f.indexedAt < :before)")
+    int deleteUnsavedIndexedBefore(@Param("user") User user, @Param("before") LocalDateTime before);
+
+    @Modifying
+    @Query("update DriveFile f set f.trashed = true where f.user = :user and f.saved = true " +
+           "and f.indexedAt is not null and f.indexedAt < :before")
+    int trashSavedIndexedBefore(@Param("user") User user, @Param("before") LocalDateTime before);
 }
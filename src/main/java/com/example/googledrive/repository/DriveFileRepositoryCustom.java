@@ -0,0 +1,16 @@
+package com.example.googledrive.repository;
+
+import com.example.googledrive.dto.SavedFileDto;
+
+import java.util.List;
+
+public interface DriveFileRepositoryCustom {
+
+    enum SavedFileSort { NAME, SIZE, CREATED }
+
+    // Keyset page of saved files ordered by (sort column, id). afterValue/afterId are the
+    // last row of the previous page, or null for the first page.
+    List<SavedFileDto> findSavedPage(Long userId, SavedFileSort sort, boolean descending,
+                                     Object afterValue, Long afterId,
+                                     String mimeType, String namePrefix, int limit);
+}
@@ -0,0 +1,109 @@
+package com.example.googledrive.repository;
+
+import com.example.googledrive.dto.SavedFileDto;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DriveFileRepositoryImpl implements DriveFileRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<SavedFileDto> findSavedPage(Long userId, SavedFileSort sort, boolean descending,
+                                            Object afterValue, Long afterId,
+                                            String mimeType, String namePrefix, int limit) {
+        if (sort != SavedFileSort.SIZE) {
+            String column = sort == SavedFileSort.NAME ? "f.fileName" : "f.createdAt";
+            return fetch(userId, null, column, descending, afterValue, afterId, mimeType, namePrefix, limit);
+        }
+
+        // Sizes can be null. Comparing coalesce(size, -1) would keep the (user_id, saved,
+        // file_size, id) index out of play, so null sizes are a keyset segment of their own,
+        // paged by id: before every size ascending, after every size descending. A cursor in
+        // that segment carries size -1.
+        boolean inNullSegment = afterId != null && Long.valueOf(-1L).equals(afterValue);
+        List<SavedFileDto> rows;
+        if (!descending && (afterId == null || inNullSegment)) {
+            rows = new ArrayList<>(fetch(userId, "f.fileSize is null", null, false,
+                null, afterId, mimeType, namePrefix, limit));
+            if (rows.size() < limit) {
+                rows.addAll(fetch(userId, "f.fileSize is not null", "f.fileSize", false,
+                    null, null, mimeType, namePrefix, limit - rows.size()));
+            }
+        } else if (!descending) {
+            rows = fetch(userId, "f.fileSize is not null", "f.fileSize", false,
+                afterValue, afterId, mimeType, namePrefix, limit);
+        } else if (inNullSegment) {
+            rows = fetch(userId, "f.fileSize is null", null, true,
+                null, afterId, mimeType, namePrefix, limit);
+        } else {
+            rows = new ArrayList<>(fetch(userId, "f.fileSize is not null", "f.fileSize", true,
+                afterValue, afterId, mimeType, namePrefix, limit));
+            if (rows.size() < limit) {
+                rows.addAll(fetch(userId, "f.fileSize is null", null, true,
+                    null, null, mimeType, namePrefix, limit - rows.size()));
+            }
+        }
+        return rows;
+    }
+
+    // One keyset query ordered by (column, id), or by id alone when column is null
+    private List<SavedFileDto> fetch(Long userId, String segment, String column, boolean descending,
+                                     Object afterValue, Long afterId,
+                                     String mimeType, String namePrefix, int limit) {
+        String cmp = descending ? "<" : ">";
+        String dir = descending ? "desc" : "asc";
+
+        StringBuilder jpql = new StringBuilder(
+            "select new com.example.googledrive.dto.SavedFileDto(" +
+            "f.id, f.googleFileId, f.fileName, f.mimeType, f.fileSize, f.downloadUrl, f.createdAt) " +
+            "from DriveFile f where f.user.id = :userId and f.saved = true");
+        if (segment != null) {
+            jpql.append(" and ").append(segment);
+        }
+        if (mimeType != null) {
+            jpql.append(" and f.mimeType = :mimeType");
+        }
+        if (namePrefix != null) {
+            jpql.append(" and f.fileName like :namePrefix escape '\\'");
+        }
+        boolean keyedByValue = afterId != null && column != null;
+        if (keyedByValue) {
+            jpql.append(" and (").append(column).append(' ').append(cmp).append(" :afterValue")
+                .append(" or (").append(column).append(" = :afterValue and f.id ").append(cmp).append(" :afterId))");
+        } else if (afterId != null) {
+            jpql.append(" and f.id ").append(cmp).append(" :afterId");
+        }
+        jpql.append(" order by ");
+        if (column != null) {
+            jpql.append(column).append(' ').append(dir).append(", ");
+        }
+        jpql.append("f.id ").append(dir);
+
+        TypedQuery<SavedFileDto> query = entityManager.createQuery(jpql.toString(), SavedFileDto.class)
+            .setParameter("userId", userId)
+            .setMaxResults(limit);
+        if (mimeType != null) {
+            query.setParameter("mimeType", mimeType);
+        }
+        if (namePrefix != null) {
+            query.setParameter("namePrefix", escapeLike(namePrefix) + "%");
+        }
+        if (keyedByValue) {
+            query.setParameter("afterValue", afterValue);
+        }
+        if (afterId != null) {
+            query.setParameter("afterId", afterId);
+        }
+        return query.getResultList();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
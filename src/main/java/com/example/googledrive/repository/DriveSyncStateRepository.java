@@ -0,0 +1,17 @@
+package com.example.googledrive.repository;
+
+import com.example.googledrive.model.DriveSyncState;
+import com.example.googledrive.model.TokenProvider;
+import com.example.googledrive.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DriveSyncStateRepository extends JpaRepository<DriveSyncState, Long> {
+    Optional<DriveSyncState> findByUserAndProviderAndDriveId(User user, TokenProvider provider, String driveId);
+    List<DriveSyncState> findByUserAndProvider(User user, TokenProvider provider);
+    List<DriveSyncState> findByProviderAndFullSyncCompletedTrue(TokenProvider provider);
+}
@@ -0,0 +1,28 @@
+package com.example.googledrive.repository;
+
+import com.example.googledrive.model.GraphDriveItem;
+import com.example.googledrive.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface GraphDriveItemRepository extends JpaRepository<GraphDriveItem, Long> {
+    List<GraphDriveItem> findByUserAndDriveKeyAndItemIdIn(User user, String driveKey, Collection<String> itemIds);
+    List<GraphDriveItem> findByUserAndDriveKeyAndParentIdOrderByFolderDescNameAsc(User user, String driveKey, String parentId);
+    List<GraphDriveItem> findByUserAndDriveKeyAndParentIdIn(User user, String driveKey, Collection<String> parentIds);
+    Optional<GraphDriveItem> findFirstByUserAndDriveKeyAndRootItemTrue(User user, String driveKey);
+
+    @Modifying
+    @Query("delete from GraphDriveItem i where i.user = :user and i.driveKey = :driveKey " +
+           "and (i.indexedAt is null or i.indexedAt < :before)")
+    int deleteIndexedBefore(@Param("user") User user, @Param("driveKey") String driveKey,
+                            @Param("before") LocalDateTime before);
+}
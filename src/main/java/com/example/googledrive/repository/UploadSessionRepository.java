@@ -0,0 +1,23 @@
+package com.example.googledrive.repository;
+
+import com.example.googledrive.model.UploadSession;
+import com.example.googledrive.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+    Optional<UploadSession> findByIdAndUser(Long id, User user);
+    List<UploadSession> findByUserAndStatusOrderByCreatedAtDesc(User user, UploadSession.Status status);
+
+    @Modifying
+    @Query("delete from UploadSession s where s.expiresAt < :before")
+    int deleteExpiredBefore(@Param("before") LocalDateTime before);
+}
@@ -3,9 +3,13 @@ package com.example.googledrive.repository;
 import com.example.googledrive.model.TokenProvider;
 import com.example.googledrive.model.User;
 import com.example.googledrive.model.UserToken;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +19,11 @@ public interface UserTokenRepository extends JpaRepository<UserToken, Long> {
     Optional<UserToken> findByUserId(Long userId);
     Optional<UserToken> findByUserAndProvider(User user, TokenProvider provider);
     List<UserToken> findByUserAndProviderIn(User user, List<TokenProvider> providers);
+
+    // Keyset page of tokens due for refresh; ordered by id so tokens refreshed while the
+    // scan runs don't shift later pages
+    @Query("select t from UserToken t where t.expiresAt < :expiresBefore and t.refreshToken is not null " +
+           "and t.id > :afterId order by t.id")
+    List<UserToken> findExpiringPage(@Param("expiresBefore") LocalDateTime expiresBefore,
+                                     @Param("afterId") Long afterId, Pageable page);
 }
@@ -0,0 +1,93 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.TokenProvider;
+import com.example.googledrive.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// In-process cache of access tokens in front of user_tokens. Entries expire at the
+// point where the token services would refresh anyway, so anything served from here
+// is still usable without touching the database.
+@Service
+public class AccessTokenCache {
+
+    // Same margin the token services use before refreshing
+    public static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+
+    @Value("${token.cache.max-size:50000}")
+    private long maxSize;
+
+    private Cache<TokenKey, CachedToken> tokens;
+
+    @PostConstruct
+    public void init() {
+        tokens = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new Expiry<TokenKey, CachedToken>() {
+                @Override
+                public long expireAfterCreate(TokenKey key, CachedToken token, long currentTime) {
+                    return nanosUntilRefresh(token);
+                }
+
+                @Override
+                public long expireAfterUpdate(TokenKey key, CachedToken token, long currentTime, long currentDuration) {
+                    return nanosUntilRefresh(token);
+                }
+
+                @Override
+                public long expireAfterRead(TokenKey key, CachedToken token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+    }
+
+    public Optional<String> get(User user, TokenProvider provider) {
+        CachedToken token = tokens.getIfPresent(new TokenKey(user.getId(), provider));
+        return Optional.ofNullable(token).map(CachedToken::accessToken);
+    }
+
+    public void put(User user, TokenProvider provider, String accessToken, LocalDateTime expiresAt) {
+        if (accessToken == null || expiresAt == null) {
+            invalidate(user, provider);
+            return;
+        }
+        tokens.put(new TokenKey(user.getId(), provider), new CachedToken(accessToken, expiresAt));
+    }
+
+    public void invalidate(User user, TokenProvider provider) {
+        tokens.invalidate(new TokenKey(user.getId(), provider));
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = tokens.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("size", tokens.estimatedSize());
+        return result;
+    }
+
+    private static long nanosUntilRefresh(CachedToken token) {
+        long nanos = Duration.between(LocalDateTime.now(), token.expiresAt().minus(REFRESH_MARGIN)).toNanos();
+        return Math.max(nanos, 0);
+    }
+
+    private record TokenKey(Long userId, TokenProvider provider) {}
+
+    private record CachedToken(String accessToken, LocalDateTime expiresAt) {}
+}
@@ -0,0 +1,196 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.config.RateLimitProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Client-side throttle for outbound Drive and Graph calls. Every call takes a permit from a
+// per-user token bucket and from the provider-wide bucket, waiting its turn instead of failing.
+// A 429/503 halves the user's rate and blocks the bucket for the Retry-After (or a jittered
+// backoff); successes creep the rate back up, so throughput settles just under the quota.
+@Service
+public class AdaptiveRateLimiter {
+
+    public static final String GOOGLE = "google";
+    public static final String MICROSOFT = "microsoft";
+
+    // Rates never drop below this share of the configured rate
+    private static final double MIN_RATE_FRACTION = 0.05;
+    // Additive increase per success, as a share of the configured rate
+    private static final double INCREASE_FRACTION = 0.01;
+    // Only one decrease per bucket per window, so a burst of 429s from one spike counts once
+    private static final long DECREASE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    private Cache<String, AdaptiveBucket> userBuckets;
+    private final Map<String, AdaptiveBucket> providerBuckets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> throttles = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> queued = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        userBuckets = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterAccess(Duration.ofMinutes(30))
+            .build();
+    }
+
+    // Blocks until both buckets grant a permit; fails only if that would exceed the queue limit
+    public void acquire(String provider, String principal) throws IOException {
+        AdaptiveBucket user = userBucket(provider, principal);
+        AdaptiveBucket global = providerBucket(provider);
+
+        long now = System.nanoTime();
+        long waitNanos = Math.max(user.reserve(now), global.reserve(now));
+        if (waitNanos <= 0) {
+            return;
+        }
+        if (waitNanos > TimeUnit.MILLISECONDS.toNanos(properties.getMaxQueueWaitMs())) {
+            user.cancel();
+            global.cancel();
+            throw new IOException("Rate limit queue for " + provider + " is full, retry in "
+                + TimeUnit.NANOSECONDS.toSeconds(waitNanos) + "s");
+        }
+
+        queued.computeIfAbsent(provider, p -> new AtomicLong()).incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + provider + " rate limit");
+        }
+    }
+
+    public void onSuccess(String provider, String principal) {
+        userBucket(provider, principal).increase();
+        providerBucket(provider).increase();
+    }
+
+    // Records a 429/503 and returns how long the caller should wait before retrying
+    public Duration onThrottled(String provider, String principal, Duration retryAfter, int attempt) {
+        throttles.computeIfAbsent(provider, p -> new AtomicLong()).incrementAndGet();
+        Duration delay = backoff(retryAfter, attempt);
+
+        long now = System.nanoTime();
+        userBucket(provider, principal).throttle(now, delay.toNanos(), 0.5);
+        // The provider-wide ceiling backs off gently; one user's throttle says little about the rest
+        providerBucket(provider).throttle(now, 0, 0.9);
+        return delay;
+    }
+
+    // Full-jitter exponential backoff, never shorter than what the server asked for
+    public Duration backoff(Duration retryAfter, int attempt) {
+        long ceiling = Math.min(properties.getMaxBackoffMs(), properties.getBaseBackoffMs() << Math.min(attempt, 16));
+        long jittered = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        long retryAfterMs = retryAfter != null ? Math.min(retryAfter.toMillis(), properties.getMaxBackoffMs()) : 0;
+        return Duration.ofMillis(Math.max(jittered, retryAfterMs));
+    }
+
+    public int getMaxRetries() {
+        return properties.getMaxRetries();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        providerBuckets.forEach((provider, bucket) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("rate", bucket.currentRate());
+            stats.put("throttled", throttles.getOrDefault(provider, new AtomicLong()).get());
+            stats.put("queued", queued.getOrDefault(provider, new AtomicLong()).get());
+            result.put(provider, stats);
+        });
+        result.put("userBuckets", userBuckets.estimatedSize());
+        return result;
+    }
+
+    private AdaptiveBucket userBucket(String provider, String principal) {
+        return userBuckets.get(provider + "|" + principal, key -> {
+            RateLimitProperties.Limit limit = properties.limitFor(provider);
+            return new AdaptiveBucket(limit.getRate(), limit.getBurst());
+        });
+    }
+
+    private AdaptiveBucket providerBucket(String provider) {
+        return providerBuckets.computeIfAbsent(provider, key -> {
+            RateLimitProperties.Limit limit = properties.limitFor(provider);
+            return new AdaptiveBucket(limit.getProviderRate(), limit.getProviderBurst());
+        });
+    }
+
+    private static final class AdaptiveBucket {
+        private final double maxRate;
+        private final double burst;
+
+        private double rate;
+        private double tokens;
+        private long lastRefillNanos;
+        private long blockedUntilNanos;
+        private long lastDecreaseNanos;
+
+        AdaptiveBucket(double maxRate, double burst) {
+            this.maxRate = maxRate;
+            this.burst = Math.max(burst, 1);
+            this.rate = maxRate;
+            this.tokens = this.burst;
+            this.lastRefillNanos = System.nanoTime();
+            this.lastDecreaseNanos = lastRefillNanos - DECREASE_WINDOW_NANOS;
+        }
+
+        // Takes a token now (possibly going negative) and returns how long the caller must wait
+        // for it, so queued callers are served in order without holding the lock while waiting
+        synchronized long reserve(long now) {
+            refill(now);
+            tokens -= 1;
+            long wait = tokens >= 0 ? 0 : (long) (-tokens / rate * 1_000_000_000L);
+            return Math.max(wait, blockedUntilNanos - now);
+        }
+
+        synchronized void cancel() {
+            tokens = Math.min(tokens + 1, burst);
+        }
+
+        synchronized void increase() {
+            rate = Math.min(maxRate, rate + maxRate * INCREASE_FRACTION);
+        }
+
+        synchronized void throttle(long now, long blockNanos, double factor) {
+            refill(now);
+            if (now - lastDecreaseNanos >= DECREASE_WINDOW_NANOS) {
+                rate = Math.max(maxRate * MIN_RATE_FRACTION, rate * factor);
+                lastDecreaseNanos = now;
+            }
+            if (blockNanos > 0) {
+                blockedUntilNanos = Math.max(blockedUntilNanos, now + blockNanos);
+                // Callers already holding reservations still go first; new ones start from empty
+                tokens = Math.min(tokens, 0);
+            }
+        }
+
+        synchronized double currentRate() {
+            return rate;
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefillNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(burst, tokens + elapsed * rate / 1_000_000_000L);
+                lastRefillNanos = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.googledrive.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the last JSON payload of listing and metadata calls per user, next to the ETag the
+// provider sent with it. Repeat calls go upstream with If-None-Match, and a 304 reuses the
+// stored bytes. Every payload also gets our own ETag (a hash of the bytes we return), so
+// browsers can revalidate and get a 304 back whichever way the payload was produced.
+// Only Graph revalidates upstream: Drive v3 sends no ETags for files, so Drive payloads
+// are built with payload() and refetched each time. Graph collections that come back
+// without an ETag are not stored either.
+@Service
+public class ConditionalResponseCache {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${conditional.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${conditional.cache.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    private Cache<String, Entry> entries;
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong refetched = new AtomicLong();
+
+    // JSON as sent to the browser and the quoted ETag that goes with it
+    public record Payload(byte[] json, String etag) {}
+
+    // What an upstream call returned; body is serialized unless it is already JSON bytes
+    public record Upstream(Object body, String etag) {}
+
+    @FunctionalInterface
+    public interface Revalidation {
+        // Returns null when the provider answered 304 to ifNoneMatch (null on first fetch)
+        Upstream fetch(String ifNoneMatch) throws Exception;
+    }
+
+    private record Entry(String upstreamEtag, Payload payload) {}
+
+    @PostConstruct
+    public void init() {
+        entries = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String key, Entry entry) -> entry.payload().json().length + key.length())
+            .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+            .build();
+    }
+
+    public Payload fetch(Long userId, String key, Revalidation revalidation) throws Exception {
+        String cacheKey = userId + "|" + key;
+        Entry cached = entries.getIfPresent(cacheKey);
+
+        Upstream upstream = revalidation.fetch(cached != null ? cached.upstreamEtag() : null);
+        if (upstream == null) {
+            if (cached == null) {
+                throw new IllegalStateException("Not modified without a cached payload for " + key);
+            }
+            notModified.incrementAndGet();
+            return cached.payload();
+        }
+        if (cached != null) {
+            refetched.incrementAndGet();
+        }
+
+        Payload payload = payload(upstream.body());
+        if (upstream.etag() != null) {
+            entries.put(cacheKey, new Entry(upstream.etag(), payload));
+        } else {
+            // Nothing to revalidate with next time
+            entries.invalidate(cacheKey);
+        }
+        return payload;
+    }
+
+    // For responses built locally (index, delta store); only the browser side is conditional
+    public Payload payload(Object body) throws Exception {
+        byte[] json = body instanceof byte[] bytes ? bytes : objectMapper.writeValueAsBytes(body);
+        return new Payload(json, etagOf(json));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.estimatedSize());
+        stats.put("notModified", notModified.get());
+        stats.put("refetched", refetched.get());
+        return stats;
+    }
+
+    private static String etagOf(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.example.googledrive.config.OutboundHttpProperties;
+import com.example.googledrive.config.RateLimitingInterceptor;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonErrorContainer;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.services.drive.Drive;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+// Keeps one Drive client per user instead of rebuilding it for every call.
+// The client reads its bearer token from the entry, so a refreshed token is
+// picked up by swapping the value rather than building a new client.
+@Service
+public class DriveClientRegistry {
+
+    private static final int ERROR_PEEK_BYTES = 64 * 1024;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private HttpTransport httpTransport;
+
+    @Autowired
+    private OutboundHttpProperties outboundHttpProperties;
+
+    @Autowired
+    private JsonFactory jsonFactory;
+
+    @Autowired
+    private AdaptiveRateLimiter rateLimiter;
+
+    @Autowired
+    private ProviderGuard providerGuard;
+
+    @Value("${drive.client-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${drive.client-cache.idle-minutes:30}")
+    private long idleMinutes;
+
+    private Cache<Long, CachedClient> clients;
+
+    @PostConstruct
+    public void init() {
+        clients = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+            .build();
+    }
+
+    public Drive getDrive(User user) throws Exception {
+        return client(user).drive;
+    }
+
+    // A batch is one guarded HTTP request. Drive.batch() would send it uninitialized, so it
+    // gets the client's initializer here. Its parts must be queued through
+    // getBatchPartDrive: the batch runs each part's interceptor before sending but never
+    // reports a part's outcome, so parts are rate limited but take no guard slot.
+    public BatchRequest newBatch(User user) throws Exception {
+        CachedClient client = client(user);
+        return client.drive.batch(client.initializer);
+    }
+
+    public Drive getBatchPartDrive(User user) throws Exception {
+        return client(user).batchParts;
+    }
+
+    private CachedClient client(User user) throws Exception {
+        String accessToken = tokenService.getValidAccessToken(user);
+        CachedClient client = clients.get(user.getId(), CachedClient::new);
+        client.accessToken = accessToken;
+        return client;
+    }
+
+    public void evict(User user) {
+        clients.invalidate(user.getId());
+    }
+
+    // Rate limiter bucket of a user's Drive calls
+    public static String rateLimitKey(Long userId) {
+        return "user:" + userId;
+    }
+
+    public long size() {
+        return clients.estimatedSize();
+    }
+
+    // Drive reports most rate limits as 403 with one of these reasons rather than 429
+    public static boolean isRateLimitError(int status, GoogleJsonError error) {
+        if (status == 429) {
+            return true;
+        }
+        return status == 403 && error != null && error.getErrors() != null && error.getErrors().stream()
+            .anyMatch(e -> "rateLimitExceeded".equals(e.getReason()) || "userRateLimitExceeded".equals(e.getReason()));
+    }
+
+    private class CachedClient {
+        private volatile String accessToken;
+        private final HttpRequestInitializer initializer;
+        private final Drive drive;
+        private final Drive batchParts;
+
+        CachedClient(Long userId) {
+            String principal = rateLimitKey(userId);
+            this.initializer = request -> {
+                request.getHeaders().setAuthorization("Bearer " + accessToken);
+                request.setConnectTimeout(outboundHttpProperties.getConnectTimeoutMs());
+                request.setReadTimeout(outboundHttpProperties.getReadTimeoutMs());
+
+                // Runs before every attempt, retries included, so queued retries respect the limit too.
+                // The guard slot covers the wait for response headers, not reading the body.
+                GuardedAttempt attempt = new GuardedAttempt();
+                request.setInterceptor(r -> {
+                    rateLimiter.acquire(AdaptiveRateLimiter.GOOGLE, principal);
+                    ProviderGuard.Call call = providerGuard.begin(AdaptiveRateLimiter.GOOGLE);
+                    // Upload chunks take as long as the user's uplink needs, so they aren't timed
+                    if (r.getUrl().getRawPath().startsWith("/upload/")) {
+                        call.untimed();
+                    }
+                    attempt.begin(call);
+                });
+                request.setResponseInterceptor(response -> {
+                    attempt.finish(response.getStatusCode() >= 500);
+                    if (response.isSuccessStatusCode()) {
+                        rateLimiter.onSuccess(AdaptiveRateLimiter.GOOGLE, principal);
+                    }
+                });
+                request.setIOExceptionHandler((r, supportsRetry) -> {
+                    attempt.finish(true);
+                    return false;
+                });
+                request.setNumberOfRetries(rateLimiter.getMaxRetries());
+                request.setUnsuccessfulResponseHandler(new ThrottleHandler(principal, attempt));
+            };
+            this.drive = new Drive.Builder(httpTransport, jsonFactory, initializer)
+                .setApplicationName("Google Drive Integration")
+                .build();
+            this.batchParts = new Drive.Builder(httpTransport, jsonFactory, request -> {
+                    request.getHeaders().setAuthorization("Bearer " + accessToken);
+                    request.setInterceptor(r -> rateLimiter.acquire(AdaptiveRateLimiter.GOOGLE, principal));
+                })
+                .setApplicationName("Google Drive Integration")
+                .build();
+        }
+    }
+
+    private static class GuardedAttempt {
+        private ProviderGuard.Call call;
+
+        void begin(ProviderGuard.Call next) {
+            finish(true);
+            call = next;
+        }
+
+        void finish(boolean failed) {
+            if (call != null) {
+                call.record(failed);
+                call.release();
+                call = null;
+            }
+        }
+    }
+
+    // Retries 429/503 and rate-limit 403s from Drive; the wait itself happens in the rate limiter before the next attempt.
+    // The response interceptor only sees the last attempt, so every failed attempt is recorded
+    // here, and its guard slot released before the retry waits in the rate limiter.
+    private class ThrottleHandler implements HttpUnsuccessfulResponseHandler {
+        private final String principal;
+        private final GuardedAttempt guarded;
+        private int attempt;
+
+        ThrottleHandler(String principal, GuardedAttempt guarded) {
+            this.principal = principal;
+            this.guarded = guarded;
+        }
+
+        @Override
+        public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry) {
+            int status = response.getStatusCode();
+            // Throttling is not an outage; only 5xx counts against the breaker
+            guarded.finish(status >= 500);
+            if (status != 429 && status != 503 && !(status == 403 && isRateLimitError(status, peekError(response)))) {
+                return false;
+            }
+            Duration retryAfter = RateLimitingInterceptor.parseRetryAfter(
+                response.getHeaders().getFirstHeaderStringValue("Retry-After"));
+            rateLimiter.onThrottled(AdaptiveRateLimiter.GOOGLE, principal, retryAfter, attempt++);
+            return supportsRetry;
+        }
+    }
+
+    // Reads the JSON error of a response without consuming it, so a 403 that isn't retried
+    // still surfaces with its details. Error bodies are small; anything larger isn't a rate limit.
+    private GoogleJsonError peekError(HttpResponse response) {
+        try {
+            InputStream content = response.getContent();
+            if (content == null || !content.markSupported()) {
+                return null;
+            }
+            content.mark(ERROR_PEEK_BYTES);
+            byte[] body;
+            try {
+                body = content.readNBytes(ERROR_PEEK_BYTES);
+            } finally {
+                content.reset();
+            }
+            return jsonFactory.fromString(new String(body, StandardCharsets.UTF_8), GoogleJsonErrorContainer.class).getError();
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
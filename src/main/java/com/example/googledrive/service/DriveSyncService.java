@@ -0,0 +1,274 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.DriveFile;
+import com.example.googledrive.model.DriveSyncState;
+import com.example.googledrive.model.TokenProvider;
+import com.example.googledrive.model.User;
+import com.example.googledrive.repository.DriveFileRepository;
+import com.example.googledrive.repository.DriveSyncStateRepository;
+import com.example.googledrive.repository.UserRepository;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Keeps a local index of each user's Drive in drive_files. The first run crawls the
+// whole drive; after that only changes.list deltas since the stored page token are applied.
+@Service
+public class DriveSyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(DriveSyncService.class);
+
+    public static final String MY_DRIVE = "root";
+
+    private static final int PAGE_SIZE = 1000;
+    private static final String FILE_FIELDS = "id, name, size, mimeType, webContentLink, thumbnailLink, version, parents, trashed, modifiedTime";
+    private static final String CRAWL_FIELDS = "nextPageToken, files(" + FILE_FIELDS + ")";
+    private static final String CHANGE_FIELDS = "nextPageToken, newStartPageToken, changes(changeType, fileId, removed, file(" + FILE_FIELDS + "))";
+
+    @Autowired
+    private DriveClientRegistry driveClientRegistry;
+
+    @Autowired
+    private DriveFileRepository driveFileRepository;
+
+    @Autowired
+    private DriveSyncStateRepository driveSyncStateRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    @Qualifier("driveSyncExecutor")
+    private ThreadPoolTaskExecutor driveSyncExecutor;
+
+    private final Set<Long> runningSyncs = ConcurrentHashMap.newKeySet();
+
+    public Optional<DriveSyncState> getSyncState(User user) {
+        return driveSyncStateRepository.findByUserAndProviderAndDriveId(user, TokenProvider.GOOGLE, MY_DRIVE);
+    }
+
+    public boolean isIndexed(User user) {
+        return getSyncState(user).map(DriveSyncState::isFullSyncCompleted).orElse(false);
+    }
+
+    public boolean isSyncRunning(User user) {
+        return runningSyncs.contains(user.getId());
+    }
+
+    // Queues a sync on the background pool; returns false if one is already running or the pool is full
+    public boolean requestSync(User user) {
+        if (isSyncRunning(user)) {
+            return false;
+        }
+        try {
+            driveSyncExecutor.execute(() -> syncUser(user));
+            return true;
+        } catch (TaskRejectedException e) {
+            log.warn("Drive sync queue is full, skipping user {}", user.getId());
+            return false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${drive.sync.interval-ms:300000}",
+               initialDelayString = "${drive.sync.interval-ms:300000}")
+    public void syncIndexedUsers() {
+        for (DriveSyncState state : driveSyncStateRepository.findByProviderAndFullSyncCompletedTrue(TokenProvider.GOOGLE)) {
+            userRepository.findById(state.getUser().getId()).ifPresent(this::requestSync);
+        }
+    }
+
+    public void syncUser(User user) {
+        if (!runningSyncs.add(user.getId())) {
+            return;
+        }
+
+        DriveSyncState state = getSyncState(user)
+            .orElseGet(() -> new DriveSyncState(user, TokenProvider.GOOGLE, MY_DRIVE));
+
+        try {
+            if (state.isFullSyncCompleted() && state.getPageToken() != null) {
+                try {
+                    applyChanges(user, state);
+                } catch (GoogleJsonResponseException e) {
+                    // Expired or invalid page token: the only safe recovery is a fresh crawl
+                    if (e.getStatusCode() != 400 && e.getStatusCode() != 404 && e.getStatusCode() != 410) {
+                        throw e;
+                    }
+                    log.info("Drive change token for user {} is no longer valid, recrawling", user.getId());
+                    state.setFullSyncCompleted(false);
+                    fullCrawl(user, state);
+                }
+            } else {
+                fullCrawl(user, state);
+            }
+            state.setLastError(null);
+        } catch (Exception e) {
+            log.warn("Drive sync failed for user {}: {}", user.getId(), e.getMessage());
+            state.setLastError(e.getMessage());
+        } finally {
+            state.setLastSyncedAt(LocalDateTime.now());
+            driveSyncStateRepository.save(state);
+            runningSyncs.remove(user.getId());
+        }
+    }
+
+    private void fullCrawl(User user, DriveSyncState state) throws Exception {
+        LocalDateTime crawlStartedAt = LocalDateTime.now();
+
+        // Take the change token before listing so nothing modified during the crawl is missed
+        String startPageToken = driveClientRegistry.getDrive(user).changes().getStartPageToken()
+            .execute().getStartPageToken();
+
+        String pageToken = null;
+        do {
+            FileList page = driveClientRegistry.getDrive(user).files().list()
+                .setQ("trashed = false")
+                .setPageSize(PAGE_SIZE)
+                .setPageToken(pageToken)
+                .setFields(CRAWL_FIELDS)
+                .execute();
+
+            if (page.getFiles() != null && !page.getFiles().isEmpty()) {
+                upsertFiles(user, page.getFiles());
+            }
+            pageToken = page.getNextPageToken();
+        } while (pageToken != null);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            driveFileRepository.deleteUnsavedIndexedBefore(user, crawlStartedAt);
+            driveFileRepository.trashSavedIndexedBefore(user, crawlStartedAt);
+        });
+
+        state.setPageToken(startPageToken);
+        state.setFullSyncCompleted(true);
+    }
+
+    private void applyChanges(User user, DriveSyncState state) throws Exception {
+        String pageToken = state.getPageToken();
+
+        while (pageToken != null) {
+            Drive drive = driveClientRegistry.getDrive(user);
+            ChangeList changes = drive.changes().list(pageToken)
+                .setPageSize(PAGE_SIZE)
+                .setIncludeRemoved(true)
+                .setFields(CHANGE_FIELDS)
+                .execute();
+
+            List<File> updated = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            if (changes.getChanges() != null) {
+                for (Change change : changes.getChanges()) {
+                    if (change.getChangeType() != null && !"file".equals(change.getChangeType())) {
+                        continue;
+                    }
+                    File file = change.getFile();
+                    if (Boolean.TRUE.equals(change.getRemoved()) || file == null || Boolean.TRUE.equals(file.getTrashed())) {
+                        removed.add(change.getFileId());
+                    } else {
+                        updated.add(file);
+                    }
+                }
+            }
+
+            if (!updated.isEmpty()) {
+                upsertFiles(user, updated);
+            }
+            if (!removed.isEmpty()) {
+                removeFiles(user, removed);
+            }
+
+            // Checkpoint after every page so an interrupted sync resumes where it stopped
+            if (changes.getNewStartPageToken() != null) {
+                state.setPageToken(changes.getNewStartPageToken());
+                pageToken = null;
+            } else {
+                pageToken = changes.getNextPageToken();
+                state.setPageToken(pageToken);
+            }
+            driveSyncStateRepository.save(state);
+        }
+    }
+
+    private void upsertFiles(User user, List<File> files) {
+        LocalDateTime indexedAt = LocalDateTime.now();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<String> ids = files.stream().map(File::getId).collect(Collectors.toList());
+            Map<String, DriveFile> existing = driveFileRepository.findByUserAndGoogleFileIdIn(user, ids).stream()
+                .collect(Collectors.toMap(DriveFile::getGoogleFileId, Function.identity(), (a, b) -> a));
+
+            List<DriveFile> rows = new ArrayList<>(files.size());
+            for (File file : files) {
+                DriveFile row = existing.get(file.getId());
+                if (row == null) {
+                    row = new DriveFile(user, file.getId(), file.getName(), file.getMimeType(),
+                                        file.getSize(), file.getWebContentLink());
+                    row.setSaved(false);
+                } else {
+                    row.setFileName(file.getName());
+                    row.setMimeType(file.getMimeType());
+                    row.setFileSize(file.getSize());
+                    row.setDownloadUrl(file.getWebContentLink());
+                }
+                row.setParentId(file.getParents() != null && !file.getParents().isEmpty() ? file.getParents().get(0) : null);
+                row.setModifiedTime(toLocalDateTime(file.getModifiedTime()));
+                row.setVersion(file.getVersion());
+                row.setHasThumbnail(file.getThumbnailLink() != null);
+                row.setTrashed(false);
+                row.setIndexedAt(indexedAt);
+                rows.add(row);
+            }
+            driveFileRepository.saveAll(rows);
+        });
+    }
+
+    private void removeFiles(User user, List<String> fileIds) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<DriveFile> rows = driveFileRepository.findByUserAndGoogleFileIdIn(user, fileIds);
+            List<DriveFile> unsaved = new ArrayList<>();
+            for (DriveFile row : rows) {
+                if (row.isSaved()) {
+                    row.setTrashed(true);
+                } else {
+                    unsaved.add(row);
+                }
+            }
+            driveFileRepository.deleteAll(unsaved);
+        });
+    }
+
+    private LocalDateTime toLocalDateTime(DateTime dateTime) {
+        if (dateTime == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(dateTime.getValue()), ZoneOffset.UTC);
+    }
+}
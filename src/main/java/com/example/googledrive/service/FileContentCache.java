@@ -0,0 +1,222 @@
+package com.example.googledrive.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Disk cache of downloaded file content, addressed by the provider's checksum and revision
+// rather than by user or file id, so a document shared with many users is stored once.
+// Nothing here checks access: callers fetch the item's metadata with the user's own token
+// first and only then look up the blob. Size-bounded; evicted blobs are deleted.
+@Service
+public class FileContentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(FileContentCache.class);
+
+    @Value("${content.cache.dir:${java.io.tmpdir}/drive-content}")
+    private String cacheDir;
+
+    @Value("${content.cache.max-bytes:10737418240}")
+    private long maxBytes;
+
+    // Larger files are streamed through without being cached
+    @Value("${content.cache.max-file-bytes:536870912}")
+    private long maxFileBytes;
+
+    private Path root;
+    // Blob file name -> size; weights are in KiB so the total can exceed what an int holds
+    private Cache<String, Long> index;
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+
+    @FunctionalInterface
+    public interface ContentSource {
+        void writeTo(OutputStream out) throws Exception;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(cacheDir);
+        Files.createDirectories(root);
+
+        index = Caffeine.newBuilder()
+            .maximumWeight(Math.max(maxBytes / 1024, 1))
+            .weigher((String name, Long bytes) -> (int) Math.min(bytes / 1024 + 1, Integer.MAX_VALUE))
+            .evictionListener((String name, Long bytes, RemovalCause cause) -> delete(name))
+            .build();
+
+        // Temp files are leftovers of fills interrupted by a restart
+        try (Stream<Path> files = Files.list(root)) {
+            files.filter(path -> !path.getFileName().toString().endsWith(".blob"))
+                .forEach(path -> delete(path.getFileName().toString()));
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            files.sorted(Comparator.comparingLong(path -> path.toFile().lastModified()))
+                .forEach(path -> index.put(path.getFileName().toString(), path.toFile().length()));
+        }
+        log.info("File content cache at {} holding {} blobs", root, index.estimatedSize());
+    }
+
+    // Null when the provider gave no checksum, or the file is too large to cache
+    public String key(String provider, String checksum, String revision, Long size) {
+        if (checksum == null || size == null || size > maxFileBytes) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest((provider + "|" + checksum + "|" + revision).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest) + ".blob";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Optional<Path> lookup(String key) {
+        Long size = index.getIfPresent(key);
+        Path path = root.resolve(key);
+        if (size == null || !Files.isRegularFile(path)) {
+            if (size != null) {
+                index.invalidate(key);
+            }
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(path);
+    }
+
+    // Copies part of a cached blob with transferTo, which the OS can do without going
+    // through user space when the target is a socket or file
+    public void transfer(Path blob, long start, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    throw new IOException("Cached blob " + blob.getFileName() + " is shorter than expected");
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        }
+    }
+
+    // Streams the source to the client and, when it delivered exactly expectedSize bytes,
+    // keeps a copy under key. Only one request fills a key at a time; others just stream.
+    public void streamAndStore(String key, long expectedSize, OutputStream out, ContentSource source) throws Exception {
+        if (!filling.add(key)) {
+            source.writeTo(out);
+            return;
+        }
+
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(root, "fill", ".tmp");
+            TeeOutputStream tee;
+            try (OutputStream file = Files.newOutputStream(temp)) {
+                tee = new TeeOutputStream(out, file);
+                source.writeTo(tee);
+            }
+            out.flush();
+
+            if (tee.count == expectedSize) {
+                Files.move(temp, root.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+                index.put(key, expectedSize);
+                stored.incrementAndGet();
+            } else {
+                log.warn("Not caching {}: got {} bytes, expected {}", key, tee.count, expectedSize);
+            }
+        } finally {
+            filling.remove(key);
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("blobs", index.estimatedSize());
+        stats.put("approxBytes", index.policy().eviction()
+            .map(eviction -> eviction.weightedSize().orElse(0) * 1024).orElse(0L));
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("stored", stored.get());
+        return stats;
+    }
+
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(root.resolve(name));
+        } catch (IOException e) {
+            log.warn("Failed to delete cached blob {}: {}", name, e.getMessage());
+        }
+    }
+
+    // Sends every write to the client and the cache file; the client goes first so a
+    // disconnect stops the fill before more is written to disk
+    private static final class TeeOutputStream extends OutputStream {
+        private final OutputStream client;
+        private final OutputStream file;
+        private long count;
+
+        TeeOutputStream(OutputStream client, OutputStream file) {
+            this.client = client;
+            this.file = file;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            client.write(b);
+            file.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            client.write(buffer, offset, length);
+            file.write(buffer, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            client.flush();
+        }
+    }
+}
@@ -1,63 +1,114 @@
 package com.example.googledrive.service;
 
+import com.example.googledrive.dto.BatchMetadataResultDto;
+import com.example.googledrive.dto.BulkSaveResultDto;
 import com.example.googledrive.dto.FileMetadataDto;
+import com.example.googledrive.dto.ItemErrorDto;
+import com.example.googledrive.dto.SavedFileDto;
+import com.example.googledrive.dto.SavedFilePageDto;
 import com.example.googledrive.model.DriveFile;
 import com.example.googledrive.model.User;
 import com.example.googledrive.repository.DriveFileRepository;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonFactory;
+import com.example.googledrive.repository.DriveFileRepositoryCustom.SavedFileSort;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class GoogleDriveService {
 
     @Autowired
-    private TokenService tokenService;
+    private DriveClientRegistry driveClientRegistry;
 
     @Autowired
     private DriveFileRepository driveFileRepository;
 
     @Autowired
-    private NetHttpTransport httpTransport;
+    private AdaptiveRateLimiter rateLimiter;
 
     @Autowired
-    private JsonFactory jsonFactory;
+    private ConditionalResponseCache conditionalResponseCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    @Qualifier("driveListingExecutor")
+    private ThreadPoolTaskExecutor driveListingExecutor;
+
+    private static final int LISTING_PAGE_SIZE = 1000;
+    private static final int MAX_SAVED_PAGE_SIZE = 500;
+    private static final String LISTING_FIELDS = "nextPageToken, files(id, name, size, mimeType, webContentLink, thumbnailLink, version)";
+    private static final String DOWNLOAD_FIELDS = "id, name, size, mimeType, webContentLink, md5Checksum, headRevisionId, modifiedTime";
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final int BULK_CHUNK_SIZE = 500;
+    private static final String BATCH_FIELDS = "id, name, size, mimeType, webContentLink, thumbnailLink, version, md5Checksum, headRevisionId, modifiedTime";
+    // Drive accepts at most 100 calls per batch request
+    private static final int DRIVE_BATCH_SIZE = 100;
+
+    @Value("${drive.batch.concurrency:4}")
+    private int batchConcurrency;
+
+    @Value("${drive.batch.max-retries:2}")
+    private int batchMaxRetries;
 
     public List<FileMetadataDto> getUserFiles(User user) throws Exception {
-        String accessToken = tokenService.getValidAccessToken(user);
-        
-        Drive drive = new Drive.Builder(httpTransport, jsonFactory, null)
-            .setApplicationName("Google Drive Integration")
-            .setHttpRequestInitializer(request -> {
-                request.getHeaders().setAuthorization("Bearer " + accessToken);
-            })
-            .build();
+        Drive drive = driveClientRegistry.getDrive(user);
 
         try {
             FileList result = drive.files().list()
                 .setPageSize(100)
-                .setFields("nextPageToken, files(id, name, size, mimeType, webContentLink, thumbnailLink)")
+                .setFields(LISTING_FIELDS)
                 .execute();
                 
             List<File> files = result.getFiles();
             
             return files.stream()
-                .map(file -> new FileMetadataDto(
-                    file.getId(),
-                    file.getName(),
-                    file.getMimeType(),
-                    file.getSize(),
-                    file.getWebContentLink()
-                ))
+                .map(this::toFileMetadata)
                 .collect(Collectors.toList());
                 
         } catch (IOException e) {
@@ -65,34 +116,105 @@ public class GoogleDriveService {
         }
     }
 
-    public FileMetadataDto getFileMetadata(User user, String fileId) throws Exception {
-        String accessToken = tokenService.getValidAccessToken(user);
-        
-        Drive drive = new Drive.Builder(httpTransport, jsonFactory, null)
-            .setApplicationName("Google Drive Integration")
-            .setHttpRequestInitializer(request -> {
-                request.getHeaders().setAuthorization("Bearer " + accessToken);
-            })
-            .build();
+    // Drive v3 sends no ETag for files or file lists, so there is nothing to revalidate
+    // upstream with; every call goes to Drive and only the browser side is conditional
+    public ConditionalResponseCache.Payload getUserFilesPayload(User user) throws Exception {
+        return conditionalResponseCache.payload(getUserFiles(user));
+    }
 
+    public ConditionalResponseCache.Payload getFileMetadataPayload(User user, String fileId) throws Exception {
+        Drive drive = driveClientRegistry.getDrive(user);
         try {
             File file = drive.files().get(fileId)
-                .setFields("id, name, size, mimeType, webContentLink, thumbnailLink")
+                .setFields("id, name, size, mimeType, webContentLink, thumbnailLink, version")
                 .execute();
-                
-            return new FileMetadataDto(
-                file.getId(),
-                file.getName(),
-                file.getMimeType(),
-                file.getSize(),
-                file.getWebContentLink()
-            );
-            
+            return conditionalResponseCache.payload(toFileMetadata(file));
         } catch (IOException e) {
             throw new RuntimeException("Failed to fetch file metadata from Google Drive", e);
         }
     }
 
+    // Walks the whole drive following nextPageToken and writes one NDJSON line per file.
+    // The next page is fetched while the current one is written, so at most two pages
+    // are held in memory regardless of drive size.
+    public void streamAllUserFiles(User user, OutputStream out) throws Exception {
+        FileList page = fetchFilePage(user, null);
+
+        while (page != null) {
+            String nextPageToken = page.getNextPageToken();
+            CompletableFuture<FileList> nextPage = null;
+            if (nextPageToken != null) {
+                nextPage = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return fetchFilePage(user, nextPageToken);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, driveListingExecutor);
+            }
+
+            try {
+                if (page.getFiles() != null) {
+                    for (File file : page.getFiles()) {
+                        out.write(objectMapper.writeValueAsBytes(toFileMetadata(file)));
+                        out.write('\n');
+                    }
+                }
+                out.flush();
+            } catch (IOException e) {
+                // Client went away, don't keep crawling for nobody
+                if (nextPage != null) {
+                    nextPage.cancel(true);
+                }
+                throw e;
+            }
+
+            try {
+                page = nextPage != null ? nextPage.join() : null;
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private FileList fetchFilePage(User user, String pageToken) throws Exception {
+        // Re-resolve the client per page; a full crawl can outlive a single access token
+        Drive drive = driveClientRegistry.getDrive(user);
+        try {
+            return drive.files().list()
+                .setPageSize(LISTING_PAGE_SIZE)
+                .setPageToken(pageToken)
+                .setFields(LISTING_FIELDS)
+                .execute();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to fetch files from Google Drive", e);
+        }
+    }
+
+    private FileMetadataDto toFileMetadata(File file) {
+        FileMetadataDto metadata = new FileMetadataDto(
+            file.getId(),
+            file.getName(),
+            file.getMimeType(),
+            file.getSize(),
+            file.getWebContentLink()
+        );
+        if (file.getThumbnailLink() != null) {
+            metadata.setThumbnailUrl(thumbnailUrl(file.getId(), file.getVersion()));
+        }
+        return metadata;
+    }
+
+    // Drive's thumbnailLink is short-lived and needs the user's token; hand out our cached proxy,
+    // versioned so an edited file gets a new URL
+    private static String thumbnailUrl(String fileId, Long version) {
+        String url = "/api/drive/files/" + fileId + "/thumbnail";
+        return version != null ? url + "?v=" + version : url;
+    }
+
     public DriveFile saveFileMetadata(User user, FileMetadataDto fileMetadata) {
         // Check if file already exists
         Optional<DriveFile> existingFile = driveFileRepository
@@ -105,6 +227,7 @@ public class GoogleDriveService {
             driveFile.setMimeType(fileMetadata.getMimeType());
             driveFile.setFileSize(fileMetadata.getSize());
             driveFile.setDownloadUrl(fileMetadata.getDownloadUrl());
+            driveFile.setSaved(true);
         } else {
             driveFile = new DriveFile(
                 user,
@@ -119,24 +242,302 @@ public class GoogleDriveService {
         return driveFileRepository.save(driveFile);
     }
 
-    public List<DriveFile> getUserSavedFiles(User user) {
-        return driveFileRepository.findByUser(user);
+    // Upserts many files in chunks: one SELECT per chunk, then batched inserts and updates.
+    // The persistence context is cleared between chunks so large imports don't accumulate entities.
+    public BulkSaveResultDto saveFileMetadataBulk(User user, List<FileMetadataDto> files) {
+        Map<String, FileMetadataDto> byId = new LinkedHashMap<>();
+        int skipped = 0;
+        for (FileMetadataDto file : files) {
+            if (file == null || file.getId() == null || file.getName() == null) {
+                skipped++;
+                continue;
+            }
+            // Later entries for the same file win
+            byId.put(file.getId(), file);
+        }
+
+        List<FileMetadataDto> unique = new ArrayList<>(byId.values());
+        int inserted = 0;
+        int updated = 0;
+
+        for (int from = 0; from < unique.size(); from += BULK_CHUNK_SIZE) {
+            List<FileMetadataDto> chunk = unique.subList(from, Math.min(from + BULK_CHUNK_SIZE, unique.size()));
+            int[] counts = transactionTemplate.execute(status -> upsertChunk(user, chunk));
+            inserted += counts[0];
+            updated += counts[1];
+        }
+
+        return new BulkSaveResultDto(files.size(), inserted, updated, skipped);
     }
 
-    public byte[] downloadFile(User user, String fileId) throws Exception {
-        String accessToken = tokenService.getValidAccessToken(user);
-        
-        Drive drive = new Drive.Builder(httpTransport, jsonFactory, null)
-            .setApplicationName("Google Drive Integration")
-            .setHttpRequestInitializer(request -> {
-                request.getHeaders().setAuthorization("Bearer " + accessToken);
+    private int[] upsertChunk(User user, List<FileMetadataDto> chunk) {
+        List<String> ids = chunk.stream().map(FileMetadataDto::getId).collect(Collectors.toList());
+        Map<String, DriveFile> existing = driveFileRepository.findByUserAndGoogleFileIdIn(user, ids).stream()
+            .collect(Collectors.toMap(DriveFile::getGoogleFileId, Function.identity(), (a, b) -> a));
+
+        List<DriveFile> rows = new ArrayList<>(chunk.size());
+        int inserted = 0;
+        for (FileMetadataDto file : chunk) {
+            DriveFile row = existing.get(file.getId());
+            if (row == null) {
+                row = new DriveFile(user, file.getId(), file.getName(), file.getMimeType(),
+                                    file.getSize(), file.getDownloadUrl());
+                inserted++;
+            } else {
+                row.setFileName(file.getName());
+                row.setMimeType(file.getMimeType());
+                row.setFileSize(file.getSize());
+                row.setDownloadUrl(file.getDownloadUrl());
+                row.setSaved(true);
+            }
+            rows.add(row);
+        }
+
+        driveFileRepository.saveAll(rows);
+        driveFileRepository.flush();
+        // Detach the chunk's rows so the persistence context doesn't grow across chunks
+        entityManager.clear();
+        return new int[] {inserted, chunk.size() - inserted};
+    }
+
+    public List<SavedFileDto> getUserSavedFiles(User user) {
+        return driveFileRepository.findSavedFilesByUserId(user.getId());
+    }
+
+    // Keyset-paginated saved files. The cursor is opaque to clients and pins the sort it was
+    // issued for, so a page request never degrades into an OFFSET scan.
+    public SavedFilePageDto getSavedFilesPage(User user, String sort, String direction, int limit,
+                                              String cursor, String mimeType, String namePrefix) {
+        SavedFileSort sortBy = parseSort(sort);
+        boolean descending = "desc".equalsIgnoreCase(direction);
+        int pageSize = Math.max(1, Math.min(limit, MAX_SAVED_PAGE_SIZE));
+
+        Object afterValue = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = decodeCursor(cursor);
+            if (!parts[0].equals(sortBy.name() + (descending ? "-" : "+"))) {
+                throw new IllegalArgumentException("Cursor was issued for a different sort order");
+            }
+            try {
+                afterId = Long.parseLong(parts[1]);
+                afterValue = switch (sortBy) {
+                    case NAME -> parts[2];
+                    case SIZE -> Long.parseLong(parts[2]);
+                    case CREATED -> LocalDateTime.parse(parts[2]);
+                };
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+
+        String mimeFilter = mimeType == null || mimeType.isBlank() ? null : mimeType;
+        String prefixFilter = namePrefix == null || namePrefix.isEmpty() ? null : namePrefix;
+
+        // Fetch one extra row to learn whether there is a next page without a count query
+        List<SavedFileDto> rows = driveFileRepository.findSavedPage(user.getId(), sortBy, descending,
+            afterValue, afterId, mimeFilter, prefixFilter, pageSize + 1);
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            SavedFileDto last = rows.get(rows.size() - 1);
+            Object lastValue = switch (sortBy) {
+                case NAME -> last.getFileName();
+                case SIZE -> last.getFileSize() != null ? last.getFileSize() : -1L;
+                case CREATED -> last.getCreatedAt();
+            };
+            nextCursor = encodeCursor(sortBy.name() + (descending ? "-" : "+"), last.getId(), lastValue);
+        }
+        return new SavedFilePageDto(rows, nextCursor);
+    }
+
+    private static SavedFileSort parseSort(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return SavedFileSort.CREATED;
+        }
+        try {
+            return SavedFileSort.valueOf(sort.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported sort: " + sort);
+        }
+    }
+
+    private static String encodeCursor(String sortKey, Long id, Object value) {
+        String raw = sortKey + ":" + id + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // The value goes last so file names containing ':' survive the split
+            String[] parts = raw.split(":", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    // Serves a listing from the local sync index instead of calling Drive
+    public List<FileMetadataDto> getIndexedFiles(User user, String parentId, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(page, size, Sort.by("fileName", "id"));
+        Page<DriveFile> rows = parentId != null
+            ? driveFileRepository.findByUserAndParentIdAndTrashedFalse(user, parentId, pageRequest)
+            : driveFileRepository.findByUserAndTrashedFalse(user, pageRequest);
+
+        return rows.stream()
+            .map(row -> {
+                FileMetadataDto dto = new FileMetadataDto(
+                    row.getGoogleFileId(),
+                    row.getFileName(),
+                    row.getMimeType(),
+                    row.getFileSize(),
+                    row.getDownloadUrl()
+                );
+                if (row.getModifiedTime() != null) {
+                    dto.setModifiedTime(row.getModifiedTime().toInstant(ZoneOffset.UTC));
+                }
+                if (row.isHasThumbnail()) {
+                    dto.setThumbnailUrl(thumbnailUrl(row.getGoogleFileId(), row.getVersion()));
+                }
+                return dto;
             })
-            .build();
+            .collect(Collectors.toList());
+    }
+
+    public FileMetadataDto getDownloadMetadata(User user, String fileId) throws Exception {
+        Drive drive = driveClientRegistry.getDrive(user);
 
         try {
-            return drive.files().get(fileId).executeMediaAsInputStream().readAllBytes();
+            File file = drive.files().get(fileId)
+                .setFields(DOWNLOAD_FIELDS)
+                .execute();
+
+            return toDetailedMetadata(file);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to fetch file metadata from Google Drive", e);
+        }
+    }
+
+    // Metadata for many files at once through Drive batch requests, 100 calls per round trip.
+    // A few batches run concurrently; items rejected for rate limits get another round.
+    public BatchMetadataResultDto getFileMetadataBatch(User user, List<String> fileIds) throws Exception {
+        List<String> requested = new ArrayList<>(new LinkedHashSet<>(fileIds));
+        Map<String, FileMetadataDto> found = new ConcurrentHashMap<>();
+        Map<String, ItemErrorDto> errors = new ConcurrentHashMap<>();
+
+        List<String> pending = requested;
+        for (int round = 0; !pending.isEmpty(); round++) {
+            List<List<String>> batches = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i += DRIVE_BATCH_SIZE) {
+                batches.add(pending.subList(i, Math.min(i + DRIVE_BATCH_SIZE, pending.size())));
+            }
+
+            for (int i = 0; i < batches.size(); i += batchConcurrency) {
+                List<CompletableFuture<Void>> wave = new ArrayList<>();
+                for (List<String> batch : batches.subList(i, Math.min(i + batchConcurrency, batches.size()))) {
+                    wave.add(CompletableFuture.runAsync(() -> executeMetadataBatch(user, batch, found, errors),
+                                                        driveListingExecutor));
+                }
+                wave.forEach(CompletableFuture::join);
+            }
+
+            List<String> throttled = pending.stream()
+                .filter(id -> errors.containsKey(id) && errors.get(id).getStatus() == 429)
+                .collect(Collectors.toList());
+            if (throttled.isEmpty() || round >= batchMaxRetries) {
+                break;
+            }
+            throttled.forEach(errors::remove);
+            // The next batch call waits in the rate limiter until the backoff has passed
+            rateLimiter.onThrottled(AdaptiveRateLimiter.GOOGLE, DriveClientRegistry.rateLimitKey(user.getId()), null, round);
+            pending = throttled;
+        }
+
+        List<FileMetadataDto> files = requested.stream()
+            .map(found::get)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        Map<String, ItemErrorDto> orderedErrors = new LinkedHashMap<>();
+        requested.stream()
+            .filter(errors::containsKey)
+            .forEach(id -> orderedErrors.put(id, errors.get(id)));
+        return new BatchMetadataResultDto(files, orderedErrors);
+    }
+
+    private void executeMetadataBatch(User user, List<String> fileIds,
+                                      Map<String, FileMetadataDto> found, Map<String, ItemErrorDto> errors) {
+        try {
+            BatchRequest batch = driveClientRegistry.newBatch(user);
+            Drive parts = driveClientRegistry.getBatchPartDrive(user);
+            for (String fileId : fileIds) {
+                parts.files().get(fileId)
+                    .setFields(BATCH_FIELDS)
+                    .queue(batch, new JsonBatchCallback<File>() {
+                        @Override
+                        public void onSuccess(File file, HttpHeaders responseHeaders) {
+                            found.put(fileId, toDetailedMetadata(file));
+                        }
+
+                        @Override
+                        public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                            // Drive reports rate limits as 403 too; treat them like 429 so they're retried
+                            boolean rateLimited = DriveClientRegistry.isRateLimitError(error.getCode(), error);
+                            errors.put(fileId, new ItemErrorDto(rateLimited ? 429 : error.getCode(), error.getMessage()));
+                        }
+                    });
+            }
+            batch.execute();
+        } catch (Exception e) {
+            // The batch call itself failed; report it against every file it carried
+            for (String fileId : fileIds) {
+                if (!found.containsKey(fileId)) {
+                    errors.putIfAbsent(fileId, new ItemErrorDto(502, "Batch request failed: " + e.getMessage()));
+                }
+            }
+        }
+    }
+
+    private FileMetadataDto toDetailedMetadata(File file) {
+        FileMetadataDto metadata = toFileMetadata(file);
+        metadata.setChecksum(file.getMd5Checksum());
+        metadata.setRevision(file.getHeadRevisionId());
+        if (file.getModifiedTime() != null) {
+            metadata.setModifiedTime(Instant.ofEpochMilli(file.getModifiedTime().getValue()));
+        }
+        return metadata;
+    }
+
+    // Pipes file content to the given stream through a fixed-size buffer. When rangeStart
+    // is set, only bytes rangeStart..rangeEnd (inclusive) are requested from Drive.
+    public void streamFileContent(User user, String fileId, Long rangeStart, Long rangeEnd,
+                                  OutputStream out) throws Exception {
+        Drive drive = driveClientRegistry.getDrive(user);
+
+        Drive.Files.Get request = drive.files().get(fileId);
+        if (rangeStart != null) {
+            request.getRequestHeaders().setRange("bytes=" + rangeStart + "-" + rangeEnd);
+        }
+
+        InputStream in;
+        try {
+            in = request.executeMediaAsInputStream();
         } catch (IOException e) {
             throw new RuntimeException("Failed to download file from Google Drive", e);
         }
+
+        try (in) {
+            byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.flush();
+        }
     }
 }
@@ -0,0 +1,306 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+// Sends Graph requests through /$batch, up to 20 per call. Requests linked by dependsOn are
+// kept in the same batch as Graph requires. Items answered with 429 (and dependents that
+// failed with 424 because of them) are re-sent after the longest Retry-After in the batch.
+@Service
+public class GraphBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphBatchService.class);
+
+    public static final int MAX_BATCH_SIZE = 20;
+
+    private static final String BATCH_URL = "https://graph.microsoft.com/v1.0/$batch";
+    private static final long DEFAULT_RETRY_AFTER_MS = 1000;
+    private static final String ITEM_SELECT = "id,name,size,file,folder,parentReference,webUrl,eTag,cTag,lastModifiedDateTime,@microsoft.graph.downloadUrl";
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("providerFanoutExecutor")
+    private ThreadPoolTaskExecutor providerFanoutExecutor;
+
+    @Value("${microsoft.batch.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${microsoft.batch.max-retry-after-ms:30000}")
+    private long maxRetryAfterMs;
+
+    @Value("${microsoft.batch.concurrency:4}")
+    private int concurrency;
+
+    // url is relative to the Graph version root, e.g. "/me/drive/items/{id}"
+    public record BatchRequest(String id, String method, String url, List<String> dependsOn) {
+        public static BatchRequest get(String id, String url) {
+            return new BatchRequest(id, "GET", url, List.of());
+        }
+    }
+
+    public record BatchResponse(String id, int status, Map<String, String> headers, JsonNode body) {
+        public boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    // Returns one response per request id, in request order
+    public Map<String, BatchResponse> execute(User user, List<BatchRequest> requests) throws Exception {
+        List<List<BatchRequest>> batches = pack(requests);
+
+        Map<String, BatchResponse> responses = new HashMap<>();
+        // A few batches in flight at once; more just trades latency for throttling
+        for (int i = 0; i < batches.size(); i += concurrency) {
+            List<CompletableFuture<Map<String, BatchResponse>>> wave = new ArrayList<>();
+            for (List<BatchRequest> batch : batches.subList(i, Math.min(i + concurrency, batches.size()))) {
+                wave.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return executeWithRetries(user, batch);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, providerFanoutExecutor));
+            }
+            try {
+                wave.forEach(future -> responses.putAll(future.join()));
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        Map<String, BatchResponse> ordered = new LinkedHashMap<>();
+        for (BatchRequest request : requests) {
+            ordered.put(request.id(), responses.get(request.id()));
+        }
+        return ordered;
+    }
+
+    // Metadata (including a short-lived pre-authenticated download URL) for many items of
+    // one drive, keyed by item id; failed lookups keep their Graph status and error body
+    public Map<String, BatchResponse> getItems(User user, String driveKey, List<String> itemIds) throws Exception {
+        String drivePath = GraphSyncService.drivePath(driveKey);
+        List<BatchRequest> requests = new ArrayList<>();
+        Map<String, String> itemIdsByRequest = new HashMap<>();
+        for (String itemId : new LinkedHashSet<>(itemIds)) {
+            if (itemId == null || itemId.isBlank() || itemId.contains("/") || itemId.contains("?") || itemId.contains("#")) {
+                throw new IllegalArgumentException("Invalid item id: " + itemId);
+            }
+            // Batch ids only need to be unique within the call; item ids can be long
+            String requestId = String.valueOf(requests.size() + 1);
+            itemIdsByRequest.put(requestId, itemId);
+            requests.add(BatchRequest.get(requestId, drivePath + "/items/" + itemId + "?$select=" + ITEM_SELECT));
+        }
+
+        Map<String, BatchResponse> byItemId = new LinkedHashMap<>();
+        execute(user, requests).forEach((requestId, response) ->
+            byItemId.put(itemIdsByRequest.get(requestId), response));
+        return byItemId;
+    }
+
+    // Groups requests connected through dependsOn, then fills batches of at most 20 in order
+    private List<List<BatchRequest>> pack(List<BatchRequest> requests) {
+        Map<String, BatchRequest> byId = new LinkedHashMap<>();
+        for (BatchRequest request : requests) {
+            if (byId.put(request.id(), request) != null) {
+                throw new IllegalArgumentException("Duplicate batch request id: " + request.id());
+            }
+        }
+
+        Map<String, String> parent = new HashMap<>();
+        byId.keySet().forEach(id -> parent.put(id, id));
+        for (BatchRequest request : requests) {
+            for (String dependency : request.dependsOn()) {
+                if (!byId.containsKey(dependency)) {
+                    throw new IllegalArgumentException("Request " + request.id() + " depends on unknown id " + dependency);
+                }
+                parent.put(find(parent, request.id()), find(parent, dependency));
+            }
+        }
+
+        Map<String, List<BatchRequest>> groups = new LinkedHashMap<>();
+        for (BatchRequest request : requests) {
+            groups.computeIfAbsent(find(parent, request.id()), root -> new ArrayList<>()).add(request);
+        }
+
+        List<List<BatchRequest>> batches = new ArrayList<>();
+        List<BatchRequest> current = new ArrayList<>();
+        for (List<BatchRequest> group : groups.values()) {
+            if (group.size() > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("A dependsOn chain can't span more than " + MAX_BATCH_SIZE + " requests");
+            }
+            if (current.size() + group.size() > MAX_BATCH_SIZE) {
+                batches.add(current);
+                current = new ArrayList<>();
+            }
+            current.addAll(group);
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    private static String find(Map<String, String> parent, String id) {
+        String root = id;
+        while (!parent.get(root).equals(root)) {
+            root = parent.get(root);
+        }
+        parent.put(id, root);
+        return root;
+    }
+
+    private Map<String, BatchResponse> executeWithRetries(User user, List<BatchRequest> batch) throws Exception {
+        Map<String, BatchResponse> done = new HashMap<>();
+        List<BatchRequest> pending = batch;
+
+        for (int attempt = 0; ; attempt++) {
+            Map<String, BatchResponse> responses = post(user, pending);
+
+            Set<String> retryIds = new HashSet<>();
+            long retryAfterMs = 0;
+            for (BatchRequest request : pending) {
+                BatchResponse response = responses.get(request.id());
+                if (response != null && response.status() == 429) {
+                    retryIds.add(request.id());
+                    retryAfterMs = Math.max(retryAfterMs, retryAfterMs(response.headers().get("Retry-After")));
+                }
+            }
+            // Dependents of a throttled request fail with 424; they go again together with it
+            boolean added = true;
+            while (added) {
+                added = false;
+                for (BatchRequest request : pending) {
+                    BatchResponse response = responses.get(request.id());
+                    if (!retryIds.contains(request.id()) && response != null && response.status() == 424
+                            && request.dependsOn().stream().anyMatch(retryIds::contains)) {
+                        added = retryIds.add(request.id()) || added;
+                    }
+                }
+            }
+
+            for (BatchRequest request : pending) {
+                if (!retryIds.contains(request.id()) || attempt >= maxRetries) {
+                    BatchResponse response = responses.get(request.id());
+                    done.put(request.id(), response != null ? response
+                        : new BatchResponse(request.id(), 502, Map.of(), null));
+                }
+            }
+            if (retryIds.isEmpty() || attempt >= maxRetries) {
+                return done;
+            }
+
+            log.debug("Graph batch throttled {} of {} requests, retrying in {} ms", retryIds.size(), pending.size(), retryAfterMs);
+            Thread.sleep(retryAfterMs);
+
+            // Dependencies that already succeeded are no longer part of the batch
+            pending = pending.stream()
+                .filter(request -> retryIds.contains(request.id()))
+                .map(request -> new BatchRequest(request.id(), request.method(), request.url(),
+                    request.dependsOn().stream().filter(retryIds::contains).collect(Collectors.toList())))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private Map<String, BatchResponse> post(User user, List<BatchRequest> batch) throws Exception {
+        ObjectNode payload = objectMapper.createObjectNode();
+        ArrayNode items = payload.putArray("requests");
+        for (BatchRequest request : batch) {
+            ObjectNode item = items.addObject();
+            item.put("id", request.id());
+            item.put("method", request.method());
+            item.put("url", request.url());
+            if (!request.dependsOn().isEmpty()) {
+                ArrayNode dependsOn = item.putArray("dependsOn");
+                request.dependsOn().forEach(dependsOn::add);
+            }
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setBearerAuth(microsoftTokenService.getValidAccessToken(user));
+            headers.setContentType(MediaType.APPLICATION_JSON);
+
+            try {
+                String body = restTemplate.exchange(URI.create(BATCH_URL), HttpMethod.POST,
+                    new HttpEntity<>(objectMapper.writeValueAsString(payload), headers), String.class).getBody();
+                return parse(objectMapper.readTree(body));
+            } catch (HttpStatusCodeException e) {
+                // The whole batch can be throttled too, not just items inside it
+                if (e.getStatusCode().value() != 429 || attempt >= maxRetries) {
+                    throw e;
+                }
+                HttpHeaders responseHeaders = e.getResponseHeaders();
+                Thread.sleep(retryAfterMs(responseHeaders != null ? responseHeaders.getFirst("Retry-After") : null));
+            }
+        }
+    }
+
+    private Map<String, BatchResponse> parse(JsonNode root) {
+        Map<String, BatchResponse> responses = new HashMap<>();
+        for (JsonNode item : root.path("responses")) {
+            Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            Iterator<Map.Entry<String, JsonNode>> fields = item.path("headers").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                headers.put(field.getKey(), field.getValue().asText());
+            }
+            String id = item.path("id").asText();
+            responses.put(id, new BatchResponse(id, item.path("status").asInt(), headers, item.get("body")));
+        }
+        return responses;
+    }
+
+    private long retryAfterMs(String retryAfter) {
+        long millis = DEFAULT_RETRY_AFTER_MS;
+        if (retryAfter != null) {
+            try {
+                millis = Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                // HTTP-date form isn't used by Graph; keep the default
+            }
+        }
+        return Math.min(Math.max(millis, 0), maxRetryAfterMs);
+    }
+}
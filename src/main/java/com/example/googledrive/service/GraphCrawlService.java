@@ -0,0 +1,269 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Recursively lists a OneDrive or SharePoint drive (or a folder subtree) and streams every
+// item as NDJSON while the crawl is still running. Up to `parallelism` folders of one crawl
+// are listed at once on the shared crawl pool; whichever worker frees up first takes the
+// next folder off the crawl's frontier, so one huge folder doesn't stall its siblings.
+@Service
+public class GraphCrawlService {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphCrawlService.class);
+
+    private static final String CHILDREN_SELECT = "id,name,size,file,folder,parentReference,webUrl,eTag,cTag,lastModifiedDateTime";
+    private static final int CHILDREN_PAGE_SIZE = 200;
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("graphCrawlExecutor")
+    private ThreadPoolTaskExecutor graphCrawlExecutor;
+
+    @Value("${microsoft.crawl.parallelism:8}")
+    private int parallelism;
+
+    @Value("${microsoft.crawl.max-depth:64}")
+    private int maxDepthLimit;
+
+    @Value("${microsoft.crawl.max-items:200000}")
+    private int maxItemsLimit;
+
+    public void crawl(User user, String driveKey, String folderId, Integer maxDepth, Integer maxItems,
+                      OutputStream out) throws IOException {
+        int depthLimit = maxDepth != null ? Math.max(1, Math.min(maxDepth, maxDepthLimit)) : maxDepthLimit;
+        int itemLimit = maxItems != null ? Math.max(1, Math.min(maxItems, maxItemsLimit)) : maxItemsLimit;
+
+        Crawl crawl = new Crawl(user, GraphSyncService.driveUrl(driveKey), depthLimit, itemLimit);
+        crawl.enqueue(new Folder(folderId == null || folderId.isBlank() ? null : folderId, 0));
+
+        try {
+            // This thread only writes; all Graph calls happen on the crawl pool
+            while (true) {
+                JsonNode record = crawl.output.poll(200, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    out.flush();
+                    if (crawl.isFinished() && crawl.output.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                out.write(objectMapper.writeValueAsBytes(record));
+                out.write('\n');
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("done", true);
+            summary.put("items", crawl.emitted.get());
+            summary.put("folders", crawl.foldersListed.get());
+            summary.put("errors", crawl.errors.get());
+            summary.put("truncated", crawl.truncated);
+            out.write(objectMapper.writeValueAsBytes(summary));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            // Client went away, stop listing folders for nobody
+            crawl.stopped = true;
+            throw e;
+        } catch (InterruptedException e) {
+            crawl.stopped = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void listFolder(Crawl crawl, Folder folder) {
+        String url = crawl.driveUrl
+            + (folder.id() == null ? "/root" : "/items/" + folder.id())
+            + "/children?$top=" + CHILDREN_PAGE_SIZE + "&$select=" + CHILDREN_SELECT;
+        int childDepth = folder.depth() + 1;
+
+        try {
+            // Follow @odata.nextLink until the folder is exhausted
+            while (url != null && !crawl.stopped) {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setBearerAuth(microsoftTokenService.getValidAccessToken(crawl.user));
+                String body = restTemplate.exchange(URI.create(url), HttpMethod.GET, new HttpEntity<>(headers), String.class).getBody();
+                JsonNode page = objectMapper.readTree(body);
+
+                for (JsonNode item : page.path("value")) {
+                    if (!crawl.reserveItem()) {
+                        return;
+                    }
+                    ObjectNode record = (ObjectNode) item;
+                    record.put("depth", childDepth);
+                    if (!crawl.emit(record)) {
+                        return;
+                    }
+                    if (item.has("folder") && childDepth < crawl.maxDepth
+                            && item.path("folder").path("childCount").asInt(1) > 0) {
+                        crawl.enqueue(new Folder(item.get("id").asText(), childDepth));
+                    }
+                }
+                url = page.hasNonNull("@odata.nextLink") ? page.get("@odata.nextLink").asText() : null;
+            }
+            crawl.foldersListed.incrementAndGet();
+        } catch (Exception e) {
+            crawl.errors.incrementAndGet();
+            log.warn("Crawl of folder {} failed for user {}: {}", folder.id(), crawl.user.getId(), e.getMessage());
+            ObjectNode error = objectMapper.createObjectNode();
+            error.put("error", "Failed to list folder: " + e.getMessage());
+            error.put("folderId", folder.id());
+            crawl.emit(error);
+        }
+    }
+
+    private record Folder(String id, int depth) {}
+
+    private class Crawl {
+        private final User user;
+        private final String driveUrl;
+        private final int maxDepth;
+        private final int maxItems;
+
+        private final Deque<Folder> frontier = new ArrayDeque<>();
+        private final BlockingQueue<JsonNode> output = new ArrayBlockingQueue<>(CHILDREN_PAGE_SIZE * 16);
+        private final AtomicInteger emitted = new AtomicInteger();
+        private final AtomicInteger foldersListed = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+
+        // Guarded by this; reporting counts skipped folders whose error record isn't written yet
+        private int running;
+        private int reporting;
+
+        private volatile boolean truncated;
+        private volatile boolean stopped;
+
+        Crawl(User user, String driveUrl, int maxDepth, int maxItems) {
+            this.user = user;
+            this.driveUrl = driveUrl;
+            this.maxDepth = maxDepth;
+            this.maxItems = maxItems;
+        }
+
+        void enqueue(Folder folder) {
+            List<Folder> skipped;
+            synchronized (this) {
+                frontier.addLast(folder);
+                skipped = dispatch();
+            }
+            reportSkipped(skipped);
+        }
+
+        synchronized boolean isFinished() {
+            return stopped || (running == 0 && reporting == 0 && frontier.isEmpty());
+        }
+
+        boolean reserveItem() {
+            if (emitted.incrementAndGet() > maxItems) {
+                emitted.decrementAndGet();
+                truncated = true;
+                stopped = true;
+                return false;
+            }
+            return true;
+        }
+
+        // Blocks while the writer catches up, so a slow client throttles the crawl
+        boolean emit(JsonNode record) {
+            try {
+                while (!stopped) {
+                    if (output.offer(record, 200, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        // Starts folders until this crawl's share of the pool is used; called whenever a
+        // folder is queued or a worker finishes, with the lock held. Returns the folders the
+        // pool turned away.
+        private List<Folder> dispatch() {
+            List<Folder> skipped = List.of();
+            while (!stopped && running < parallelism && !frontier.isEmpty()) {
+                Folder next = frontier.pollFirst();
+                running++;
+                try {
+                    graphCrawlExecutor.execute(() -> {
+                        try {
+                            listFolder(this, next);
+                        } finally {
+                            finished();
+                        }
+                    });
+                } catch (TaskRejectedException e) {
+                    running--;
+                    errors.incrementAndGet();
+                    log.warn("Graph crawl pool is full, skipping folder {} for user {}", next.id(), user.getId());
+                    if (skipped.isEmpty()) {
+                        skipped = new ArrayList<>();
+                    }
+                    skipped.add(next);
+                    reporting++;
+                }
+            }
+            return skipped;
+        }
+
+        private void finished() {
+            List<Folder> skipped;
+            synchronized (this) {
+                running--;
+                skipped = dispatch();
+            }
+            reportSkipped(skipped);
+        }
+
+        // Same record as a folder that failed to list, so clients know which subtree is missing.
+        // Written outside the lock: emit blocks while the writer catches up.
+        private void reportSkipped(List<Folder> skipped) {
+            for (Folder folder : skipped) {
+                ObjectNode error = objectMapper.createObjectNode();
+                error.put("error", "Skipped folder: crawl pool is full");
+                error.put("folderId", folder.id());
+                emit(error);
+                synchronized (this) {
+                    reporting--;
+                }
+            }
+        }
+    }
+}
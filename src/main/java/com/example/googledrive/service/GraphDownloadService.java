@@ -0,0 +1,118 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.dto.FileMetadataDto;
+import com.example.googledrive.model.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.OffsetDateTime;
+
+// Downloads of OneDrive/SharePoint file content. Metadata is always fetched with the user's
+// token, which is also the access check; content then comes from the pre-authenticated
+// download URL and is streamed, never buffered, so file size doesn't affect the heap.
+@Service
+public class GraphDownloadService {
+
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final String DOWNLOAD_SELECT = "id,name,size,file,cTag,lastModifiedDateTime,@microsoft.graph.downloadUrl";
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    // Checksum is the quickXorHash (or SHA-1/SHA-256 where that's all SharePoint returns),
+    // revision the cTag, which changes only when the content does
+    public FileMetadataDto getDownloadMetadata(User user, String driveKey, String itemId) throws Exception {
+        if (itemId.contains("/") || itemId.contains("?") || itemId.contains("#")) {
+            throw new IllegalArgumentException("Invalid item id: " + itemId);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(microsoftTokenService.getValidAccessToken(user));
+
+        JsonNode item = restTemplate.exchange(
+            URI.create(GraphSyncService.driveUrl(driveKey) + "/items/" + itemId + "?$select=" + DOWNLOAD_SELECT),
+            HttpMethod.GET, new HttpEntity<>(headers), JsonNode.class).getBody();
+        if (item == null) {
+            throw new IllegalStateException("Empty response from Microsoft Graph");
+        }
+
+        JsonNode file = item.path("file");
+        FileMetadataDto metadata = new FileMetadataDto(
+            item.path("id").asText(),
+            item.path("name").asText(null),
+            file.path("mimeType").asText(null),
+            item.hasNonNull("size") ? item.get("size").asLong() : null,
+            item.path("@microsoft.graph.downloadUrl").asText(null)
+        );
+        JsonNode hashes = file.path("hashes");
+        for (String hash : new String[] {"quickXorHash", "sha256Hash", "sha1Hash"}) {
+            if (hashes.hasNonNull(hash)) {
+                metadata.setChecksum(hash + ":" + hashes.get(hash).asText());
+                break;
+            }
+        }
+        metadata.setRevision(item.path("cTag").asText(null));
+        if (item.hasNonNull("lastModifiedDateTime")) {
+            metadata.setModifiedTime(OffsetDateTime.parse(item.get("lastModifiedDateTime").asText()).toInstant());
+        }
+        return metadata;
+    }
+
+    // Where the bytes are: the download URL from the metadata, or else wherever Graph's
+    // /content redirects to. The redirect is read, not followed, so the bearer token never
+    // goes to the storage host.
+    public String resolveContentUrl(User user, String driveKey, FileMetadataDto metadata) throws Exception {
+        if (metadata.getDownloadUrl() != null) {
+            return metadata.getDownloadUrl();
+        }
+        String accessToken = microsoftTokenService.getValidAccessToken(user);
+        URI location = restTemplate.execute(
+            URI.create(GraphSyncService.driveUrl(driveKey) + "/items/" + metadata.getId() + "/content"),
+            HttpMethod.GET,
+            request -> request.getHeaders().setBearerAuth(accessToken),
+            response -> response.getStatusCode().is3xxRedirection() ? response.getHeaders().getLocation() : null);
+        return location != null ? location.toString() : null;
+    }
+
+    // Copies content through a fixed-size buffer. With rangeStart set only rangeStart..rangeEnd
+    // (inclusive) is written, even if the storage host ignores the Range header.
+    public void streamContent(String contentUrl, Long rangeStart, Long rangeEnd, OutputStream out) {
+        // Pre-authenticated URL, no bearer token
+        restTemplate.execute(URI.create(contentUrl), HttpMethod.GET,
+            request -> {
+                if (rangeStart != null) {
+                    request.getHeaders().set(HttpHeaders.RANGE, "bytes=" + rangeStart + "-" + rangeEnd);
+                }
+            },
+            response -> {
+                try (InputStream in = response.getBody()) {
+                    long skip = 0;
+                    long remaining = Long.MAX_VALUE;
+                    if (rangeStart != null) {
+                        skip = response.getStatusCode().value() == 206 ? 0 : rangeStart;
+                        remaining = rangeEnd - rangeStart + 1;
+                    }
+                    in.skipNBytes(skip);
+
+                    byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+                    int read;
+                    while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                    out.flush();
+                }
+                return null;
+            });
+    }
+}
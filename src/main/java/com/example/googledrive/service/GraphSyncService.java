@@ -0,0 +1,336 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.DriveSyncState;
+import com.example.googledrive.model.GraphDriveItem;
+import com.example.googledrive.model.TokenProvider;
+import com.example.googledrive.model.User;
+import com.example.googledrive.repository.DriveSyncStateRepository;
+import com.example.googledrive.repository.GraphDriveItemRepository;
+import com.example.googledrive.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Mirrors OneDrive and SharePoint site drives into graph_drive_items using Graph delta
+// queries. Each drive keeps its deltaLink in drive_sync_states so later runs only
+// fetch what changed.
+@Service
+public class GraphSyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphSyncService.class);
+
+    public static final String MY_DRIVE = "me";
+    private static final String SITE_PREFIX = "site:";
+
+    private static final String GRAPH_BASE_URL = "https://graph.microsoft.com/v1.0";
+    private static final String DELTA_SELECT = "id,name,size,file,folder,root,deleted,parentReference,webUrl,eTag,cTag,lastModifiedDateTime";
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Autowired
+    private GraphDriveItemRepository graphDriveItemRepository;
+
+    @Autowired
+    private DriveSyncStateRepository driveSyncStateRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("driveSyncExecutor")
+    private ThreadPoolTaskExecutor driveSyncExecutor;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private final Set<String> runningSyncs = ConcurrentHashMap.newKeySet();
+
+    public static String siteDriveKey(String siteId) {
+        return SITE_PREFIX + siteId;
+    }
+
+    public Optional<DriveSyncState> getSyncState(User user, String driveKey) {
+        return driveSyncStateRepository.findByUserAndProviderAndDriveId(user, TokenProvider.MICROSOFT, driveKey);
+    }
+
+    public boolean isIndexed(User user, String driveKey) {
+        return getSyncState(user, driveKey).map(DriveSyncState::isFullSyncCompleted).orElse(false);
+    }
+
+    public boolean requestSync(User user, String driveKey) {
+        if (runningSyncs.contains(runKey(user, driveKey))) {
+            return false;
+        }
+        try {
+            driveSyncExecutor.execute(() -> syncDrive(user, driveKey));
+            return true;
+        } catch (TaskRejectedException e) {
+            log.warn("Graph sync queue is full, skipping {} for user {}", driveKey, user.getId());
+            return false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${microsoft.sync.interval-ms:300000}",
+               initialDelayString = "${microsoft.sync.interval-ms:300000}")
+    public void syncIndexedDrives() {
+        for (DriveSyncState state : driveSyncStateRepository.findByProviderAndFullSyncCompletedTrue(TokenProvider.MICROSOFT)) {
+            String driveKey = state.getDriveId();
+            userRepository.findById(state.getUser().getId()).ifPresent(user -> requestSync(user, driveKey));
+        }
+    }
+
+    public void syncDrive(User user, String driveKey) {
+        String runKey = runKey(user, driveKey);
+        if (!runningSyncs.add(runKey)) {
+            return;
+        }
+
+        DriveSyncState state = getSyncState(user, driveKey)
+            .orElseGet(() -> new DriveSyncState(user, TokenProvider.MICROSOFT, driveKey));
+
+        try {
+            if (state.isFullSyncCompleted() && state.getPageToken() != null) {
+                try {
+                    runDelta(user, driveKey, state.getPageToken(), state);
+                } catch (HttpClientErrorException e) {
+                    // 410 Gone means the delta link expired and Graph wants a full resync
+                    if (e.getStatusCode().value() != HttpStatus.GONE.value()) {
+                        throw e;
+                    }
+                    log.info("Graph delta link for {} expired for user {}, resyncing", driveKey, user.getId());
+                    state.setFullSyncCompleted(false);
+                    runFullSync(user, driveKey, state);
+                }
+            } else {
+                runFullSync(user, driveKey, state);
+            }
+            state.setLastError(null);
+        } catch (Exception e) {
+            log.warn("Graph sync failed for {} of user {}: {}", driveKey, user.getId(), e.getMessage());
+            state.setLastError(e.getMessage());
+        } finally {
+            state.setLastSyncedAt(LocalDateTime.now());
+            driveSyncStateRepository.save(state);
+            runningSyncs.remove(runKey);
+        }
+    }
+
+    // Graph-shaped children of a folder (or the drive root when folderId is null), read from local storage
+    public List<Map<String, Object>> getChildren(User user, String driveKey, String folderId) {
+        String parentId = folderId;
+        if (parentId == null || "root".equals(parentId)) {
+            Optional<GraphDriveItem> root = graphDriveItemRepository.findFirstByUserAndDriveKeyAndRootItemTrue(user, driveKey);
+            if (root.isEmpty()) {
+                return List.of();
+            }
+            parentId = root.get().getItemId();
+        }
+
+        return graphDriveItemRepository.findByUserAndDriveKeyAndParentIdOrderByFolderDescNameAsc(user, driveKey, parentId)
+            .stream()
+            .map(this::toGraphItem)
+            .collect(Collectors.toList());
+    }
+
+    private void runFullSync(User user, String driveKey, DriveSyncState state) throws Exception {
+        LocalDateTime startedAt = LocalDateTime.now();
+        runDelta(user, driveKey, deltaUrl(driveKey), state);
+
+        // A fresh enumeration returns every live item, so anything not touched is gone
+        transactionTemplate.executeWithoutResult(status ->
+            graphDriveItemRepository.deleteIndexedBefore(user, driveKey, startedAt));
+    }
+
+    private void runDelta(User user, String driveKey, String url, DriveSyncState state) throws Exception {
+        while (url != null) {
+            String accessToken = microsoftTokenService.getValidAccessToken(user);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setBearerAuth(accessToken);
+
+            String body = restTemplate.exchange(URI.create(url), HttpMethod.GET, new HttpEntity<>(headers), String.class).getBody();
+            JsonNode page = objectMapper.readTree(body);
+
+            applyPage(user, driveKey, page.path("value"));
+
+            if (page.hasNonNull("@odata.nextLink")) {
+                url = page.get("@odata.nextLink").asText();
+            } else {
+                url = null;
+                if (page.hasNonNull("@odata.deltaLink")) {
+                    state.setPageToken(page.get("@odata.deltaLink").asText());
+                    state.setFullSyncCompleted(true);
+                }
+            }
+        }
+    }
+
+    private void applyPage(User user, String driveKey, JsonNode items) {
+        if (!items.isArray() || items.isEmpty()) {
+            return;
+        }
+
+        List<JsonNode> updated = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (JsonNode item : items) {
+            if (item.has("deleted")) {
+                deleted.add(item.get("id").asText());
+            } else {
+                updated.add(item);
+            }
+        }
+
+        LocalDateTime indexedAt = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!updated.isEmpty()) {
+                upsertItems(user, driveKey, updated, indexedAt);
+            }
+            if (!deleted.isEmpty()) {
+                deleteItems(user, driveKey, deleted);
+            }
+        });
+    }
+
+    private void upsertItems(User user, String driveKey, List<JsonNode> items, LocalDateTime indexedAt) {
+        List<String> ids = items.stream().map(item -> item.get("id").asText()).collect(Collectors.toList());
+        Map<String, GraphDriveItem> existing = graphDriveItemRepository.findByUserAndDriveKeyAndItemIdIn(user, driveKey, ids)
+            .stream()
+            .collect(Collectors.toMap(GraphDriveItem::getItemId, Function.identity(), (a, b) -> a));
+
+        List<GraphDriveItem> rows = new ArrayList<>(items.size());
+        for (JsonNode item : items) {
+            String itemId = item.get("id").asText();
+            GraphDriveItem row = existing.computeIfAbsent(itemId, id -> new GraphDriveItem(user, driveKey, id));
+
+            JsonNode parent = item.path("parentReference");
+            row.setRemoteDriveId(textOrNull(parent, "driveId"));
+            row.setRootItem(item.has("root"));
+            row.setParentId(row.isRootItem() ? null : textOrNull(parent, "id"));
+            row.setName(textOrNull(item, "name"));
+            row.setSize(item.hasNonNull("size") ? item.get("size").asLong() : null);
+            row.setFolder(item.has("folder"));
+            row.setChildCount(item.path("folder").hasNonNull("childCount") ? item.path("folder").get("childCount").asInt() : null);
+            row.setMimeType(textOrNull(item.path("file"), "mimeType"));
+            row.setQuickXorHash(textOrNull(item.path("file").path("hashes"), "quickXorHash"));
+            row.setWebUrl(textOrNull(item, "webUrl"));
+            row.setETag(textOrNull(item, "eTag"));
+            row.setCTag(textOrNull(item, "cTag"));
+            String lastModified = textOrNull(item, "lastModifiedDateTime");
+            row.setLastModified(lastModified != null
+                ? OffsetDateTime.parse(lastModified).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime()
+                : null);
+            row.setIndexedAt(indexedAt);
+            rows.add(row);
+        }
+        graphDriveItemRepository.saveAll(rows);
+    }
+
+    // Graph doesn't always report deletions for the children of a deleted folder, so
+    // the subtree is removed locally as well
+    private void deleteItems(User user, String driveKey, List<String> itemIds) {
+        Set<String> frontier = new HashSet<>(itemIds);
+        List<GraphDriveItem> toDelete = new ArrayList<>(graphDriveItemRepository.findByUserAndDriveKeyAndItemIdIn(user, driveKey, frontier));
+        while (!frontier.isEmpty()) {
+            List<GraphDriveItem> children = graphDriveItemRepository.findByUserAndDriveKeyAndParentIdIn(user, driveKey, frontier);
+            frontier = children.stream()
+                .filter(GraphDriveItem::isFolder)
+                .map(GraphDriveItem::getItemId)
+                .collect(Collectors.toSet());
+            toDelete.addAll(children);
+        }
+        graphDriveItemRepository.deleteAll(toDelete);
+    }
+
+    private Map<String, Object> toGraphItem(GraphDriveItem row) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", row.getItemId());
+        item.put("name", row.getName());
+        if (row.getSize() != null) {
+            item.put("size", row.getSize());
+        }
+        item.put("webUrl", row.getWebUrl());
+        item.put("eTag", row.getETag());
+        item.put("cTag", row.getCTag());
+        if (row.getLastModified() != null) {
+            item.put("lastModifiedDateTime", row.getLastModified().atOffset(ZoneOffset.UTC).toString());
+        }
+
+        Map<String, Object> parentReference = new LinkedHashMap<>();
+        parentReference.put("driveId", row.getRemoteDriveId());
+        parentReference.put("id", row.getParentId());
+        item.put("parentReference", parentReference);
+
+        if (row.isFolder()) {
+            Map<String, Object> folder = new LinkedHashMap<>();
+            folder.put("childCount", row.getChildCount());
+            item.put("folder", folder);
+        } else {
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("mimeType", row.getMimeType());
+            if (row.getQuickXorHash() != null) {
+                file.put("hashes", Map.of("quickXorHash", row.getQuickXorHash()));
+            }
+            item.put("file", file);
+        }
+        return item;
+    }
+
+    // Path of the drive behind a drive key, relative to the Graph version root
+    public static String drivePath(String driveKey) {
+        return MY_DRIVE.equals(driveKey)
+            ? "/me/drive"
+            : "/sites/" + driveKey.substring(SITE_PREFIX.length()) + "/drive";
+    }
+
+    public static String driveUrl(String driveKey) {
+        return GRAPH_BASE_URL + drivePath(driveKey);
+    }
+
+    private String deltaUrl(String driveKey) {
+        return driveUrl(driveKey) + "/root/delta?$select=" + DELTA_SELECT;
+    }
+
+    private String runKey(User user, String driveKey) {
+        return user.getId() + "|" + driveKey;
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+}
@@ -1,9 +1,12 @@
 package com.example.googledrive.service;
 
+import com.example.googledrive.dto.TokenResponseDto;
 import com.example.googledrive.model.TokenProvider;
 import com.example.googledrive.model.User;
 import com.example.googledrive.model.UserToken;
 import com.example.googledrive.repository.UserTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -22,9 +25,23 @@ import java.util.Optional;
 @Service
 public class MicrosoftTokenService {
 
+    private static final Logger log = LoggerFactory.getLogger(MicrosoftTokenService.class);
+
     @Autowired
     private UserTokenRepository userTokenRepository;
 
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private AccessTokenCache accessTokenCache;
+
+    @Autowired
+    private TokenRefreshCoordinator tokenRefreshCoordinator;
+
+    @Autowired
+    private SharePointTokenCache sharePointTokenCache;
+
     @Value("${microsoft.client.id}")
     private String microsoftClientId;
 
@@ -64,7 +81,9 @@ public class MicrosoftTokenService {
                                     LocalDateTime.now().plusSeconds(expiresIn), TokenProvider.MICROSOFT);
         }
         
-        return userTokenRepository.save(userToken);
+        UserToken saved = userTokenRepository.save(userToken);
+        accessTokenCache.put(user, TokenProvider.MICROSOFT, saved.getAccessToken(), saved.getExpiresAt());
+        return saved;
     }
 
     public Optional<UserToken> getTokenByUser(User user) {
@@ -72,6 +91,11 @@ public class MicrosoftTokenService {
     }
 
     public String getValidAccessToken(User user) throws Exception {
+        Optional<String> cached = accessTokenCache.get(user, TokenProvider.MICROSOFT);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
         Optional<UserToken> tokenOpt = userTokenRepository.findByUserAndProvider(user, TokenProvider.MICROSOFT);
         
         if (tokenOpt.isEmpty()) {
@@ -84,13 +108,23 @@ public class MicrosoftTokenService {
         if (userToken.getExpiresAt().isBefore(LocalDateTime.now().plusMinutes(5))) {
             // Try to refresh the token
             if (userToken.getRefreshToken() != null) {
-                refreshAccessToken(userToken);
-                userToken = userTokenRepository.findByUserAndProvider(user, TokenProvider.MICROSOFT).orElseThrow();
+                UserToken staleToken = userToken;
+                return tokenRefreshCoordinator.refresh(user.getId(), TokenProvider.MICROSOFT, () -> {
+                    // A refresh that finished while we were waiting has already cached the new token
+                    Optional<String> refreshed = accessTokenCache.get(user, TokenProvider.MICROSOFT);
+                    if (refreshed.isPresent()) {
+                        return refreshed.get();
+                    }
+                    // doRefresh updates the entity in place, no need to read it back
+                    doRefresh(staleToken);
+                    return staleToken.getAccessToken();
+                });
             } else {
                 throw new RuntimeException("Access token expired and no refresh token available");
             }
         }
         
+        accessTokenCache.put(user, TokenProvider.MICROSOFT, userToken.getAccessToken(), userToken.getExpiresAt());
         return userToken.getAccessToken();
     }
 
@@ -99,8 +133,13 @@ public class MicrosoftTokenService {
             throw new RuntimeException("No refresh token available");
         }
 
-        RestTemplate restTemplate = new RestTemplate();
-        
+        tokenRefreshCoordinator.refresh(userToken.getUser().getId(), TokenProvider.MICROSOFT, () -> {
+            doRefresh(userToken);
+            return userToken.getAccessToken();
+        });
+    }
+
+    private void doRefresh(UserToken userToken) throws Exception {
         // Prepare request headers
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -134,13 +173,28 @@ public class MicrosoftTokenService {
             userToken.setUpdatedAt(LocalDateTime.now());
             
             userTokenRepository.save(userToken);
+            accessTokenCache.put(userToken.getUser(), TokenProvider.MICROSOFT, newAccessToken, userToken.getExpiresAt());
             
         } catch (Exception e) {
             throw new RuntimeException("Failed to refresh Microsoft access token: " + e.getMessage(), e);
         }
     }
 
-    public String getSharePointToken(User user, java.util.List<String> scopes) throws Exception {
+    public TokenResponseDto getSharePointToken(User user, java.util.List<String> scopes) throws Exception {
+        try {
+            return sharePointTokenCache.get(user, scopes, () -> exchangeSharePointToken(user, scopes));
+        } catch (Exception e) {
+            // Fallback: return the main access token if SharePoint-specific token fails
+            log.warn("Failed to get SharePoint token for user {}, falling back to main access token: {}",
+                user.getId(), e.getMessage());
+            String accessToken = getValidAccessToken(user);
+            LocalDateTime expiresAt = getTokenByUser(user).map(UserToken::getExpiresAt).orElse(LocalDateTime.now());
+            long expiresIn = Math.max(java.time.Duration.between(LocalDateTime.now(), expiresAt).getSeconds(), 0);
+            return new TokenResponseDto(accessToken, null, expiresIn, "Bearer", expiresAt);
+        }
+    }
+
+    private TokenResponseDto exchangeSharePointToken(User user, java.util.List<String> scopes) throws Exception {
         Optional<UserToken> tokenOpt = userTokenRepository.findByUserAndProvider(user, TokenProvider.MICROSOFT);
 
         if (tokenOpt.isEmpty()) {
@@ -154,8 +208,6 @@ public class MicrosoftTokenService {
             throw new RuntimeException("No refresh token available for SharePoint token exchange");
         }
 
-        RestTemplate restTemplate = new RestTemplate();
-
         // Prepare request headers
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -170,36 +222,32 @@ public class MicrosoftTokenService {
 
         HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
 
-        try {
-            String response = restTemplate.postForObject(MICROSOFT_TOKEN_URL, request, String.class);
-
-            // Parse response
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode responseNode = mapper.readTree(response);
-
-            if (responseNode.has("access_token")) {
-                String sharePointToken = responseNode.get("access_token").asText();
-                System.out.println("Successfully obtained SharePoint token for scopes: " + String.join(", ", scopes));
-                return sharePointToken;
-            } else if (responseNode.has("error")) {
-                String error = responseNode.get("error").asText();
-                String errorDescription = responseNode.has("error_description") ?
-                        responseNode.get("error_description").asText() : "No description provided";
-                throw new RuntimeException("SharePoint token request failed: " + error + " - " + errorDescription);
-            } else {
-                throw new RuntimeException("Unexpected response format when requesting SharePoint token");
-            }
-
-        } catch (Exception e) {
-            System.err.println("Failed to get SharePoint token: " + e.getMessage());
-            // Fallback: return the main access token if SharePoint-specific token fails
-            System.out.println("Falling back to main access token");
-            return getValidAccessToken(user);
+        String response = restTemplate.postForObject(MICROSOFT_TOKEN_URL, request, String.class);
+
+        // Parse response
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode responseNode = mapper.readTree(response);
+
+        if (responseNode.has("access_token")) {
+            String sharePointToken = responseNode.get("access_token").asText();
+            long expiresIn = responseNode.has("expires_in") ? responseNode.get("expires_in").asLong() : 3600;
+            log.debug("Obtained SharePoint token for scopes: {}", String.join(", ", scopes));
+            return new TokenResponseDto(sharePointToken, null, expiresIn, "Bearer",
+                                        LocalDateTime.now().plusSeconds(expiresIn));
+        } else if (responseNode.has("error")) {
+            String error = responseNode.get("error").asText();
+            String errorDescription = responseNode.has("error_description") ?
+                    responseNode.get("error_description").asText() : "No description provided";
+            throw new RuntimeException("SharePoint token request failed: " + error + " - " + errorDescription);
+        } else {
+            throw new RuntimeException("Unexpected response format when requesting SharePoint token");
         }
     }
 
     public void deleteTokens(User user) {
         Optional<UserToken> tokenOpt = userTokenRepository.findByUserAndProvider(user, TokenProvider.MICROSOFT);
         tokenOpt.ifPresent(userTokenRepository::delete);
+        accessTokenCache.invalidate(user, TokenProvider.MICROSOFT);
+        sharePointTokenCache.invalidateUser(user);
     }
 }
\ No newline at end of file
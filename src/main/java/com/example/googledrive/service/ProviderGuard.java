@@ -0,0 +1,239 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.config.ResilienceProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-provider bulkhead and circuit breaker around every outbound Drive and Graph call.
+// The bulkhead caps how many request threads one provider can tie up; the breaker opens
+// when most recent calls failed or were slow, and then rejects calls immediately until a
+// few trial calls succeed. A slow Graph therefore costs a bounded number of threads and
+// never starves Drive traffic on the same node.
+@Service
+public class ProviderGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(ProviderGuard.class);
+
+    @Autowired
+    private ResilienceProperties properties;
+
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+    // Admits one call or throws without touching the provider
+    public Call begin(String provider) throws ProviderUnavailableException {
+        Guard guard = guards.computeIfAbsent(provider, Guard::new);
+
+        long now = System.nanoTime();
+        Boolean trial = guard.breaker.tryAcquire(now);
+        if (trial == null) {
+            guard.rejected.incrementAndGet();
+            throw new ProviderUnavailableException(provider,
+                capitalize(provider) + " is temporarily unavailable", guard.breaker.remainingOpen(now));
+        }
+
+        try {
+            if (!guard.bulkhead.tryAcquire(properties.getMaxWaitMs(), TimeUnit.MILLISECONDS)) {
+                guard.breaker.abandon(trial);
+                guard.rejected.incrementAndGet();
+                throw new ProviderUnavailableException(provider,
+                    "Too many concurrent requests to " + capitalize(provider), Duration.ofSeconds(1));
+            }
+        } catch (InterruptedException e) {
+            guard.breaker.abandon(trial);
+            Thread.currentThread().interrupt();
+            throw new ProviderUnavailableException(provider, "Interrupted waiting for " + provider, null);
+        }
+        return new Call(guard, trial, now);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        guards.forEach((provider, guard) -> {
+            Map<String, Object> stats = new LinkedHashMap<>(guard.breaker.stats());
+            stats.put("active", guard.limit - guard.bulkhead.availablePermits());
+            stats.put("maxConcurrent", guard.limit);
+            stats.put("rejected", guard.rejected.get());
+            result.put(provider, stats);
+        });
+        return result;
+    }
+
+    private static String capitalize(String provider) {
+        return Character.toUpperCase(provider.charAt(0)) + provider.substring(1);
+    }
+
+    // One admitted call. record() feeds the breaker once the outcome is known; release()
+    // frees the bulkhead slot, which for streamed bodies is only when the stream is closed.
+    public static final class Call {
+        private final Guard guard;
+        private final boolean trial;
+        private final long startedNanos;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean timed = true;
+
+        private Call(Guard guard, boolean trial, long startedNanos) {
+            this.guard = guard;
+            this.trial = trial;
+            this.startedNanos = startedNanos;
+        }
+
+        // For calls whose duration is set by the client rather than the provider, such as
+        // sending an upload chunk; only their failures count towards opening the circuit
+        public Call untimed() {
+            timed = false;
+            return this;
+        }
+
+        public void record(boolean failed) {
+            if (recorded.compareAndSet(false, true)) {
+                long elapsed = System.nanoTime() - startedNanos;
+                boolean slow = timed && elapsed > TimeUnit.MILLISECONDS.toNanos(guard.slowCallMs);
+                guard.breaker.record(trial, failed || slow, System.nanoTime());
+            }
+        }
+
+        public void release() {
+            // A call that never reported an outcome ended in an error somewhere
+            record(true);
+            if (released.compareAndSet(false, true)) {
+                guard.bulkhead.release();
+            }
+        }
+    }
+
+    private final class Guard {
+        private final int limit;
+        private final long slowCallMs;
+        private final Semaphore bulkhead;
+        private final CircuitBreaker breaker;
+        private final AtomicLong rejected = new AtomicLong();
+
+        Guard(String provider) {
+            this.limit = properties.limitFor(provider);
+            this.slowCallMs = properties.getSlowCallMs();
+            this.bulkhead = new Semaphore(limit);
+            this.breaker = new CircuitBreaker(provider);
+        }
+    }
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final class CircuitBreaker {
+        private final String provider;
+        private final boolean[] window = new boolean[Math.max(properties.getWindowSize(), 1)];
+        private final long openNanos = TimeUnit.MILLISECONDS.toNanos(properties.getOpenMs());
+
+        // All guarded by this
+        private State state = State.CLOSED;
+        private int next;
+        private int calls;
+        private int failures;
+        private long openedAtNanos;
+        private int trialsInFlight;
+        private int trialSuccesses;
+
+        CircuitBreaker(String provider) {
+            this.provider = provider;
+        }
+
+        // null: rejected; true: admitted as a half-open trial; false: admitted normally
+        synchronized Boolean tryAcquire(long now) {
+            if (state == State.OPEN) {
+                if (now - openedAtNanos < openNanos) {
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                trialsInFlight = 0;
+                trialSuccesses = 0;
+                log.info("Circuit for {} half-open, sending trial calls", provider);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsInFlight >= properties.getHalfOpenCalls()) {
+                    return null;
+                }
+                trialsInFlight++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void abandon(boolean trial) {
+            if (trial && state == State.HALF_OPEN) {
+                trialsInFlight--;
+            }
+        }
+
+        synchronized void record(boolean trial, boolean failed, long now) {
+            if (trial) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                trialsInFlight--;
+                if (failed) {
+                    open(now);
+                } else if (++trialSuccesses >= properties.getHalfOpenCalls()) {
+                    state = State.CLOSED;
+                    resetWindow();
+                    log.info("Circuit for {} closed", provider);
+                }
+                return;
+            }
+            // Late results of calls admitted before the circuit opened don't count
+            if (state != State.CLOSED) {
+                return;
+            }
+
+            if (calls == window.length && window[next]) {
+                failures--;
+            }
+            window[next] = failed;
+            if (failed) {
+                failures++;
+            }
+            next = (next + 1) % window.length;
+            calls = Math.min(calls + 1, window.length);
+
+            if (calls >= properties.getMinimumCalls() && failures * 100 >= properties.getFailureRatePercent() * calls) {
+                open(now);
+            }
+        }
+
+        synchronized Duration remainingOpen(long now) {
+            long remaining = state == State.OPEN ? openNanos - (now - openedAtNanos) : 0;
+            return Duration.ofNanos(Math.max(remaining, 0));
+        }
+
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("state", state.name());
+            stats.put("calls", calls);
+            stats.put("failureRate", calls == 0 ? 0.0 : failures * 100.0 / calls);
+            return stats;
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openedAtNanos = now;
+            resetWindow();
+            log.warn("Circuit for {} opened, failing fast for {} ms", provider, properties.getOpenMs());
+        }
+
+        private void resetWindow() {
+            next = 0;
+            calls = 0;
+            failures = 0;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.googledrive.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+// Thrown without calling the provider when its circuit is open or its bulkhead is full.
+// An IOException so it passes through the HTTP client layers like any other I/O failure.
+public class ProviderUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String provider;
+    private final Duration retryAfter;
+
+    public ProviderUnavailableException(String provider, String message, Duration retryAfter) {
+        super(message);
+        this.provider = provider;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    // Finds one anywhere in a cause chain; callers wrap I/O errors in RuntimeExceptions
+    public static Optional<ProviderUnavailableException> causeOf(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProviderUnavailableException unavailable) {
+                return Optional.of(unavailable);
+            }
+        }
+        return Optional.empty();
+    }
+}
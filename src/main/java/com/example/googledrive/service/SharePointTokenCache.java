@@ -0,0 +1,110 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.dto.TokenResponseDto;
+import com.example.googledrive.model.User;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+// Caches tokens exchanged for SharePoint scopes per (user, normalized scope set) until
+// shortly before their real expiry. Concurrent requests for the same key wait on the
+// one exchange in flight instead of each calling the identity endpoint.
+@Service
+public class SharePointTokenCache {
+
+    @Value("${microsoft.sharepoint-token-cache.max-size:20000}")
+    private long maxSize;
+
+    private AsyncCache<ScopeKey, TokenResponseDto> tokens;
+
+    @PostConstruct
+    public void init() {
+        tokens = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new Expiry<ScopeKey, TokenResponseDto>() {
+                @Override
+                public long expireAfterCreate(ScopeKey key, TokenResponseDto token, long currentTime) {
+                    return nanosUntilRefresh(token);
+                }
+
+                @Override
+                public long expireAfterUpdate(ScopeKey key, TokenResponseDto token, long currentTime, long currentDuration) {
+                    return nanosUntilRefresh(token);
+                }
+
+                @Override
+                public long expireAfterRead(ScopeKey key, TokenResponseDto token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .buildAsync();
+    }
+
+    public TokenResponseDto get(User user, Collection<String> scopes, Callable<TokenResponseDto> exchange) throws Exception {
+        ScopeKey key = new ScopeKey(user.getId(), normalize(scopes));
+
+        CompletableFuture<TokenResponseDto> mine = new CompletableFuture<>();
+        CompletableFuture<TokenResponseDto> existing = tokens.asMap().putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return withRemainingLifetime(existing.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        // This caller won the slot; run the exchange on its own thread and publish the result
+        try {
+            TokenResponseDto token = exchange.call();
+            mine.complete(token);
+            return token;
+        } catch (Exception | Error e) {
+            tokens.asMap().remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public void invalidateUser(User user) {
+        tokens.asMap().keySet().removeIf(key -> Objects.equals(key.userId(), user.getId()));
+    }
+
+    static List<String> normalize(Collection<String> scopes) {
+        return scopes.stream()
+            .filter(Objects::nonNull)
+            .map(scope -> scope.trim().toLowerCase(Locale.ROOT))
+            .filter(scope -> !scope.isEmpty())
+            .distinct()
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    private static TokenResponseDto withRemainingLifetime(TokenResponseDto token) {
+        long expiresIn = Math.max(Duration.between(LocalDateTime.now(), token.getExpiresTime()).getSeconds(), 0);
+        return new TokenResponseDto(token.getAccessToken(), null, expiresIn, token.getTokenType(), token.getExpiresTime());
+    }
+
+    private static long nanosUntilRefresh(TokenResponseDto token) {
+        long nanos = Duration.between(LocalDateTime.now(), token.getExpiresTime().minus(AccessTokenCache.REFRESH_MARGIN)).toNanos();
+        return Math.max(nanos, 0);
+    }
+
+    private record ScopeKey(Long userId, List<String> scopes) {}
+}
@@ -0,0 +1,359 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Thumbnails for Drive files and OneDrive/SharePoint items. The provider image is fetched
+// once, scaled to every standard size and written to a size-bounded disk cache; files
+// evicted from the cache index are deleted. Entries are per user, so a cached thumbnail is
+// never served to someone who couldn't fetch it from the provider, and per item version
+// (Drive's version, Graph's cTag), so an edited file gets a new thumbnail. Callers pass the
+// version from the listing; without one it is looked up first, which costs a metadata call.
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    // Longest edge in pixels; the largest size is also what we ask the providers for
+    public enum Size {
+        SMALL(128), MEDIUM(320), LARGE(800);
+
+        private final int pixels;
+
+        Size(int pixels) {
+            this.pixels = pixels;
+        }
+
+        public static Size parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown thumbnail size: " + value + " (use small, medium or large)");
+            }
+        }
+    }
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    @Autowired
+    private DriveClientRegistry driveClientRegistry;
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Value("${thumbnail.cache.dir:${java.io.tmpdir}/drive-thumbnails}")
+    private String cacheDir;
+
+    @Value("${thumbnail.cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${thumbnail.cache.ttl-hours:168}")
+    private long ttlHours;
+
+    private Path root;
+    // File name -> size on disk; Caffeine does the size-bounded eviction, the listener the deleting
+    private Cache<String, Long> index;
+    // Items known to have no thumbnail, so grid views don't keep asking the provider
+    private Cache<String, Boolean> missing;
+    private final Map<String, CompletableFuture<Map<Size, byte[]>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+
+    @FunctionalInterface
+    private interface SourceFetch {
+        // Null when the provider has no thumbnail for the item
+        BufferedImage fetch() throws Exception;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(cacheDir);
+        Files.createDirectories(root);
+
+        index = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String name, Long bytes) -> (int) Math.min(bytes, Integer.MAX_VALUE))
+            .expireAfterWrite(Duration.ofHours(ttlHours))
+            .evictionListener((String name, Long bytes, RemovalCause cause) -> delete(name))
+            .build();
+        missing = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+        // Pick up what an earlier run left behind, oldest first so it is evicted first
+        try (Stream<Path> files = Files.list(root)) {
+            files.filter(path -> path.getFileName().toString().endsWith(".jpg"))
+                .sorted(Comparator.comparingLong(path -> path.toFile().lastModified()))
+                .forEach(path -> index.put(path.getFileName().toString(), path.toFile().length()));
+        }
+        log.info("Thumbnail cache at {} holding {} files", root, index.estimatedSize());
+    }
+
+    public byte[] getDriveThumbnail(User user, String fileId, String version, Size size) throws Exception {
+        File known = null;
+        if (version == null) {
+            known = fetchDriveFile(user, fileId);
+            version = known.getVersion() != null ? known.getVersion().toString() : "";
+        }
+        File resolved = known;
+        return get(key("google", user, fileId, version), size, () -> {
+            File file = resolved != null ? resolved : fetchDriveFile(user, fileId);
+            if (file.getThumbnailLink() == null) {
+                return null;
+            }
+            // Thumbnail links end in a size parameter that can be swapped for the one we want
+            String link = file.getThumbnailLink().replaceFirst("=s\\d+$", "=s" + Size.LARGE.pixels);
+            Drive drive = driveClientRegistry.getDrive(user);
+            HttpResponse response = drive.getRequestFactory().buildGetRequest(new GenericUrl(link)).execute();
+            try (InputStream in = response.getContent()) {
+                return ImageIO.read(in);
+            } finally {
+                response.disconnect();
+            }
+        });
+    }
+
+    public byte[] getGraphThumbnail(User user, String driveKey, String itemId, String version, Size size) throws Exception {
+        if (itemId.contains("/") || itemId.contains("?") || itemId.contains("#")) {
+            throw new IllegalArgumentException("Invalid item id: " + itemId);
+        }
+        if (version == null) {
+            version = fetchGraphCTag(user, driveKey, itemId);
+        }
+        return get(key(driveKey, user, itemId, version), size, () -> {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setBearerAuth(microsoftTokenService.getValidAccessToken(user));
+            JsonNode thumbnail;
+            try {
+                thumbnail = restTemplate.exchange(
+                    URI.create(GraphSyncService.driveUrl(driveKey) + "/items/" + itemId + "/thumbnails/0/large"),
+                    HttpMethod.GET, new HttpEntity<>(headers), JsonNode.class).getBody();
+            } catch (HttpClientErrorException.NotFound e) {
+                return null;
+            }
+            if (thumbnail == null || !thumbnail.hasNonNull("url")) {
+                return null;
+            }
+            // Pre-authenticated URL, no bearer token
+            byte[] image = restTemplate.getForObject(URI.create(thumbnail.get("url").asText()), byte[].class);
+            return image != null ? ImageIO.read(new ByteArrayInputStream(image)) : null;
+        });
+    }
+
+    private File fetchDriveFile(User user, String fileId) throws Exception {
+        return driveClientRegistry.getDrive(user).files().get(fileId).setFields("thumbnailLink, version").execute();
+    }
+
+    // The cTag changes with the content, which is what the thumbnail is made from
+    private String fetchGraphCTag(User user, String driveKey, String itemId) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(microsoftTokenService.getValidAccessToken(user));
+        JsonNode item = restTemplate.exchange(
+            URI.create(GraphSyncService.driveUrl(driveKey) + "/items/" + itemId + "?$select=cTag"),
+            HttpMethod.GET, new HttpEntity<>(headers), JsonNode.class).getBody();
+        return item != null ? item.path("cTag").asText("") : "";
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("files", index.estimatedSize());
+        stats.put("bytes", index.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("providerFetches", fetches.get());
+        return stats;
+    }
+
+    private byte[] get(String key, Size size, SourceFetch source) throws Exception {
+        byte[] cached = read(fileName(key, size));
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        if (missing.getIfPresent(key) != null) {
+            return null;
+        }
+
+        // Concurrent misses for the same item share one provider fetch
+        CompletableFuture<Map<Size, byte[]>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<Size, byte[]>> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join().get(size);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            Map<Size, byte[]> variants = load(key, source);
+            mine.complete(variants);
+            return variants.get(size);
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Map<Size, byte[]> load(String key, SourceFetch source) throws Exception {
+        fetches.incrementAndGet();
+        BufferedImage image = source.fetch();
+        if (image == null) {
+            missing.put(key, Boolean.TRUE);
+            return Map.of();
+        }
+
+        Map<Size, byte[]> variants = new EnumMap<>(Size.class);
+        for (Size size : Size.values()) {
+            byte[] jpeg = toJpeg(scale(image, size.pixels));
+            variants.put(size, jpeg);
+            write(fileName(key, size), jpeg);
+        }
+        return variants;
+    }
+
+    private byte[] read(String name) throws IOException {
+        if (index.getIfPresent(name) == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(root.resolve(name));
+        } catch (NoSuchFileException e) {
+            index.invalidate(name);
+            return null;
+        }
+    }
+
+    private void write(String name, byte[] bytes) {
+        try {
+            // Readers never see a partly written file
+            Path temp = Files.createTempFile(root, "thumb", ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, root.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index.put(name, (long) bytes.length);
+        } catch (IOException e) {
+            // The thumbnail is still served from memory this time
+            log.warn("Failed to cache thumbnail {}: {}", name, e.getMessage());
+        }
+    }
+
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(root.resolve(name));
+        } catch (IOException e) {
+            log.warn("Failed to delete cached thumbnail {}: {}", name, e.getMessage());
+        }
+    }
+
+    // Fits the image into a square of the given edge; smaller images are never upscaled
+    private static BufferedImage scale(BufferedImage source, int edge) {
+        double factor = Math.min(1.0, (double) edge / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * factor));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha; transparent areas end up white
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static byte[] toJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static String key(String source, User user, String itemId, String version) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest((source + "|" + user.getId() + "|" + itemId + "|" + version).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String fileName(String key, Size size) {
+        return key + "-" + size.name().toLowerCase(Locale.ROOT) + ".jpg";
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.TokenProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lets only one refresh per (user, provider) run at a time. Concurrent callers wait
+// for the in-flight refresh and share its result instead of each hitting the OAuth
+// endpoint and racing to save the row.
+@Component
+public class TokenRefreshCoordinator {
+
+    private final ConcurrentHashMap<RefreshKey, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public String refresh(Long userId, TokenProvider provider, Callable<String> refresher) throws Exception {
+        RefreshKey key = new RefreshKey(userId, provider);
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        refreshes.incrementAndGet();
+        try {
+            String accessToken = refresher.call();
+            mine.complete(accessToken);
+            return accessToken;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("refreshes", refreshes.get());
+        result.put("coalesced", coalesced.get());
+        result.put("inFlight", inFlight.size());
+        return result;
+    }
+
+    private record RefreshKey(Long userId, TokenProvider provider) {}
+}
@@ -0,0 +1,149 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.model.TokenProvider;
+import com.example.googledrive.model.UserToken;
+import com.example.googledrive.repository.UserTokenRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Refreshes tokens shortly before they enter the request-time refresh window, so user
+// requests almost never have to wait on the OAuth endpoint. Refreshes go through the
+// same coordinator as request-time refreshes and never run twice for one token.
+@Component
+public class TokenRefreshScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRefreshScheduler.class);
+
+    @Autowired
+    private UserTokenRepository userTokenRepository;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Value("${token.refresh.lead-minutes:10}")
+    private long leadMinutes;
+
+    @Value("${token.refresh.jitter-seconds:30}")
+    private long jitterSeconds;
+
+    @Value("${token.refresh.workers:4}")
+    private int workers;
+
+    @Value("${token.refresh.max-backoff-minutes:30}")
+    private long maxBackoffMinutes;
+
+    @Value("${token.refresh.scan-page-size:500}")
+    private int scanPageSize;
+
+    // Kept private so it doesn't replace the scheduler that runs @Scheduled methods
+    private ThreadPoolTaskScheduler workerPool;
+
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Backoff> backoffs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        workerPool = new ThreadPoolTaskScheduler();
+        workerPool.setPoolSize(workers);
+        workerPool.setThreadNamePrefix("token-refresh-");
+        workerPool.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerPool.shutdown();
+    }
+
+    @Scheduled(fixedDelayString = "${token.refresh.scan-interval-ms:60000}")
+    public void scheduleExpiringTokens() {
+        LocalDateTime horizon = refreshHorizon();
+        Instant now = Instant.now();
+
+        long afterId = 0;
+        List<UserToken> page;
+        do {
+            page = userTokenRepository.findExpiringPage(horizon, afterId, PageRequest.ofSize(scanPageSize));
+            for (UserToken token : page) {
+                afterId = token.getId();
+                Backoff backoff = backoffs.get(token.getId());
+                if (backoff != null && now.isBefore(backoff.nextAttempt())) {
+                    continue;
+                }
+                if (!pending.add(token.getId())) {
+                    continue;
+                }
+
+                // Spread refreshes out so a batch of logins doesn't turn into a burst against the provider
+                long jitterMillis = jitterSeconds > 0 ? ThreadLocalRandom.current().nextLong(jitterSeconds * 1000) : 0;
+                Long tokenId = token.getId();
+                workerPool.schedule(() -> refresh(tokenId), now.plusMillis(jitterMillis));
+            }
+        } while (page.size() == scanPageSize);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pending", pending.size());
+        result.put("backingOff", backoffs.size());
+        return result;
+    }
+
+    private LocalDateTime refreshHorizon() {
+        return LocalDateTime.now().plus(AccessTokenCache.REFRESH_MARGIN).plusMinutes(leadMinutes);
+    }
+
+    // Works on a fresh copy of the row: a request may have refreshed the token during the
+    // jitter delay, and refreshing the scan's copy would write its replaced refresh token back
+    private void refresh(Long tokenId) {
+        UserToken token = null;
+        try {
+            token = userTokenRepository.findById(tokenId).orElse(null);
+            if (token == null || token.getRefreshToken() == null
+                    || (token.getExpiresAt() != null && !token.getExpiresAt().isBefore(refreshHorizon()))) {
+                backoffs.remove(tokenId);
+                return;
+            }
+            if (token.getProvider() == TokenProvider.MICROSOFT) {
+                microsoftTokenService.refreshAccessToken(token);
+            } else {
+                tokenService.refreshProactively(token);
+            }
+            backoffs.remove(tokenId);
+        } catch (Exception e) {
+            Backoff previous = backoffs.get(tokenId);
+            int failures = previous == null ? 1 : previous.failures() + 1;
+            Duration delay = Duration.ofSeconds(30L << Math.min(failures - 1, 10));
+            if (delay.compareTo(Duration.ofMinutes(maxBackoffMinutes)) > 0) {
+                delay = Duration.ofMinutes(maxBackoffMinutes);
+            }
+            backoffs.put(tokenId, new Backoff(failures, Instant.now().plus(delay)));
+            log.warn("Background refresh of {} token {} failed ({} in a row), retrying in {}s: {}",
+                token != null ? token.getProvider() : null, tokenId, failures, delay.getSeconds(), e.getMessage());
+        } finally {
+            pending.remove(tokenId);
+        }
+    }
+
+    private record Backoff(int failures, Instant nextAttempt) {}
+}
@@ -5,7 +5,7 @@ import com.example.googledrive.model.User;
 import com.example.googledrive.model.UserToken;
 import com.example.googledrive.repository.UserTokenRepository;
 import com.google.api.client.googleapis.auth.oauth2.*;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,12 +20,21 @@ public class TokenService {
     @Autowired
     private UserTokenRepository userTokenRepository;
 
+    @Autowired
+    private AccessTokenCache accessTokenCache;
+
+    @Autowired
+    private TokenRefreshCoordinator tokenRefreshCoordinator;
+
     @Autowired
     private GoogleAuthorizationCodeFlow googleAuthorizationCodeFlow;
 
     @Autowired
     private GoogleClientSecrets googleClientSecrets;
 
+    @Autowired
+    private HttpTransport httpTransport;
+
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
 
     public UserToken saveTokens(User user, String accessToken, String refreshToken, Long expiresIn) {
@@ -45,7 +54,9 @@ public class TokenService {
                                     LocalDateTime.now().plusSeconds(expiresIn), TokenProvider.GOOGLE);
         }
         
-        return userTokenRepository.save(userToken);
+        UserToken saved = userTokenRepository.save(userToken);
+        accessTokenCache.put(user, TokenProvider.GOOGLE, saved.getAccessToken(), saved.getExpiresAt());
+        return saved;
     }
 
     public Optional<UserToken> getTokenByUser(User user) {
@@ -53,6 +64,11 @@ public class TokenService {
     }
 
     public String getValidAccessToken(User user) throws Exception {
+        Optional<String> cached = accessTokenCache.get(user, TokenProvider.GOOGLE);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
         Optional<UserToken> tokenOpt = userTokenRepository.findByUserAndProvider(user, TokenProvider.GOOGLE);
         
         if (tokenOpt.isEmpty()) {
@@ -63,13 +79,27 @@ public class TokenService {
         
         // Check if token is expired or will expire in the next 5 minutes
         if (userToken.getExpiresAt().isBefore(LocalDateTime.now().plusMinutes(5))) {
-            // Refresh the token
-            return refreshAccessToken(userToken);
+            // Refresh the token, sharing the result with any concurrent callers
+            return tokenRefreshCoordinator.refresh(user.getId(), TokenProvider.GOOGLE, () -> {
+                // A refresh that finished while we were waiting has already cached the new token
+                Optional<String> refreshed = accessTokenCache.get(user, TokenProvider.GOOGLE);
+                if (refreshed.isPresent()) {
+                    return refreshed.get();
+                }
+                return refreshAccessToken(userToken);
+            });
         }
         
+        accessTokenCache.put(user, TokenProvider.GOOGLE, userToken.getAccessToken(), userToken.getExpiresAt());
         return userToken.getAccessToken();
     }
 
+    // Refreshes ahead of expiry regardless of the cached token; used by the background refresher
+    public String refreshProactively(UserToken userToken) throws Exception {
+        return tokenRefreshCoordinator.refresh(userToken.getUser().getId(), TokenProvider.GOOGLE,
+            () -> refreshAccessToken(userToken));
+    }
+
     private String refreshAccessToken(UserToken userToken) throws Exception {
         try {
 //            GoogleTokenResponse response = googleAuthorizationCodeFlow
@@ -78,7 +108,7 @@ public class TokenService {
 //                .execute();
 
             GoogleTokenResponse response = new GoogleRefreshTokenRequest(
-                    new NetHttpTransport(),
+                    httpTransport,
                     JSON_FACTORY,
                     userToken.getRefreshToken(),
                     googleClientSecrets.getDetails().getClientId(),
@@ -88,33 +118,9 @@ public class TokenService {
             String newAccessToken = response.getAccessToken();
             Long expiresIn = response.getExpiresInSeconds();
 
-
-
-            ///  Test
-            // ✅ For testing, override with 5 minutes (300 seconds)
-            Long testExpiresInSeconds = 300L;
-
-            // Create Credential and override expiry
-            GoogleCredential credential = new GoogleCredential.Builder()
-                    .setTransport(googleAuthorizationCodeFlow.getTransport())
-                    .setJsonFactory(googleAuthorizationCodeFlow.getJsonFactory())
-                    .setClientSecrets(googleAuthorizationCodeFlow.getClientId(), "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")
-                    .build()
-                    .setFromTokenResponse(response);
-
-            // Manually override the expiry time
-            credential.setExpirationTimeMilliseconds(
-                    System.currentTimeMillis() + (testExpiresInSeconds)
-            );
-
-            // Store credential and use it
-            ///  Test
-
-            
             // Update the stored token
             userToken.setAccessToken(newAccessToken);
-//            userToken.setExpiresAt(LocalDateTime.now().plusSeconds(expiresIn));
-            userToken.setExpiresAt(LocalDateTime.now().plusSeconds(testExpiresInSeconds));
+            userToken.setExpiresAt(LocalDateTime.now().plusSeconds(expiresIn));
             userToken.setUpdatedAt(LocalDateTime.now());
             
             // If a new refresh token is provided, update it too
@@ -123,6 +129,7 @@ public class TokenService {
             }
             
             userTokenRepository.save(userToken);
+            accessTokenCache.put(userToken.getUser(), TokenProvider.GOOGLE, newAccessToken, userToken.getExpiresAt());
             
             return newAccessToken;
         } catch (Exception e) {
@@ -133,5 +140,6 @@ public class TokenService {
     public void deleteTokens(User user) {
         Optional<UserToken> tokenOpt = userTokenRepository.findByUserAndProvider(user, TokenProvider.GOOGLE);
         tokenOpt.ifPresent(userTokenRepository::delete);
+        accessTokenCache.invalidate(user, TokenProvider.GOOGLE);
     }
 }
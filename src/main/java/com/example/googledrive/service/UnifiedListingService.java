@@ -0,0 +1,335 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.dto.FileMetadataDto;
+import com.example.googledrive.dto.ProviderStatusDto;
+import com.example.googledrive.dto.UnifiedFileListDto;
+import com.example.googledrive.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Lists Google Drive, OneDrive and SharePoint concurrently under one deadline. Whatever
+// finished in time is merged into FileMetadataDto and returned with a status per provider,
+// so one slow or broken provider no longer holds up the others.
+@Service
+public class UnifiedListingService {
+
+    public static final String GOOGLE = "google";
+    public static final String ONEDRIVE = "onedrive";
+    public static final String SHAREPOINT = "sharepoint";
+
+    private static final String GRAPH_BASE = "https://graph.microsoft.com/v1.0";
+    private static final int PAGE_SIZE = 100;
+
+    @Autowired
+    private GoogleDriveService googleDriveService;
+
+    @Autowired
+    private DriveSyncService driveSyncService;
+
+    @Autowired
+    private GraphSyncService graphSyncService;
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    @Qualifier("providerFanoutExecutor")
+    private ThreadPoolTaskExecutor providerFanoutExecutor;
+
+    public UnifiedFileListDto listAll(User user, Duration deadline) {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + deadline.toNanos();
+        boolean microsoftConnected = microsoftTokenService.getTokenByUser(user).isPresent();
+
+        List<ProviderCall> calls = new ArrayList<>();
+        calls.add(start(GOOGLE, call -> runAsync(call, () -> call.addAll(listGoogle(user)))));
+        if (microsoftConnected) {
+            calls.add(start(ONEDRIVE, call -> runAsync(call, () -> call.addAll(listOneDrive(user)))));
+            calls.add(start(SHAREPOINT, call -> listSharePoint(user, call)));
+        }
+
+        try {
+            CompletableFuture.allOf(calls.stream().map(ProviderCall::future).toArray(CompletableFuture<?>[]::new))
+                .get(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Per-provider outcomes are read from each future below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<FileMetadataDto> files = new ArrayList<>();
+        List<ProviderStatusDto> statuses = new ArrayList<>();
+        boolean complete = true;
+        for (ProviderCall call : calls) {
+            ProviderStatusDto status = call.status();
+            complete &= "ok".equals(status.getStatus());
+            files.addAll(call.files());
+            statuses.add(status);
+        }
+        if (!microsoftConnected) {
+            statuses.add(new ProviderStatusDto(ONEDRIVE, "not_connected", 0, 0, null));
+            statuses.add(new ProviderStatusDto(SHAREPOINT, "not_connected", 0, 0, null));
+        }
+        return new UnifiedFileListDto(files, statuses, complete);
+    }
+
+    private ProviderCall start(String provider, Function<ProviderCall, CompletableFuture<?>> launcher) {
+        ProviderCall call = new ProviderCall(provider, System.nanoTime());
+        call.future = launcher.apply(call)
+            .whenComplete((ignored, error) -> call.finishedNanos = System.nanoTime());
+        return call;
+    }
+
+    private CompletableFuture<?> runAsync(ProviderCall call, ProviderTask work) {
+        return supplyAsync(call, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    // Submitted as a task of its own rather than through CompletableFuture.supplyAsync, whose
+    // cancel() never reaches the thread: a provider that misses the deadline is interrupted
+    // and gives its fan-out thread back. Google's transport doesn't react to interrupts, so
+    // there the outbound read timeout is what bounds the call.
+    private <T> CompletableFuture<T> supplyAsync(ProviderCall call, Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (call.cancelled) {
+            result.cancel(false);
+            return result;
+        }
+        try {
+            Future<?> task = providerFanoutExecutor.submit(() -> {
+                try {
+                    result.complete(work.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            call.track(task);
+        } catch (RuntimeException e) {
+            // Executor saturated: report it as this provider's failure instead of failing the request
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private List<FileMetadataDto> listGoogle(User user) throws Exception {
+        List<FileMetadataDto> files = driveSyncService.isIndexed(user)
+            ? googleDriveService.getIndexedFiles(user, null, 0, PAGE_SIZE)
+            : googleDriveService.getUserFiles(user);
+        files.forEach(file -> file.setProvider(GOOGLE));
+        return files;
+    }
+
+    private List<FileMetadataDto> listOneDrive(User user) throws Exception {
+        List<Map<String, Object>> items;
+        if (graphSyncService.isIndexed(user, GraphSyncService.MY_DRIVE)) {
+            items = graphSyncService.getChildren(user, GraphSyncService.MY_DRIVE, null);
+        } else {
+            graphSyncService.requestSync(user, GraphSyncService.MY_DRIVE);
+            items = graphGetValue(user, GRAPH_BASE + "/me/drive/root/children?$top=" + PAGE_SIZE);
+        }
+        return items.stream()
+            .map(item -> toFileMetadata(item, ONEDRIVE, null))
+            .collect(Collectors.toList());
+    }
+
+    // Site discovery has to finish first; the sites' drives are then listed in parallel and
+    // each one's items become visible as soon as it completes. Composed rather than joined so
+    // no fan-out thread blocks waiting on work queued behind it.
+    private CompletableFuture<Void> listSharePoint(User user, ProviderCall call) {
+        return supplyAsync(call, () -> graphGetValue(user, GRAPH_BASE + "/sites?search=*"))
+            .thenCompose(sites -> {
+                List<CompletableFuture<?>> siteCalls = new ArrayList<>();
+                for (Map<String, Object> site : sites) {
+                    if (site.get("id") instanceof String siteId) {
+                        siteCalls.add(runAsync(call, () -> call.addAll(listSite(user, siteId))));
+                    }
+                }
+                return CompletableFuture.allOf(siteCalls.toArray(CompletableFuture<?>[]::new));
+            });
+    }
+
+    // Listed live unless already indexed. Search returns every site in the tenant, so syncing
+    // is left to the site endpoints, which start it only for sites the user actually opens.
+    private List<FileMetadataDto> listSite(User user, String siteId) throws Exception {
+        String driveKey = GraphSyncService.siteDriveKey(siteId);
+        List<Map<String, Object>> items;
+        if (graphSyncService.isIndexed(user, driveKey)) {
+            items = graphSyncService.getChildren(user, driveKey, null);
+        } else {
+            items = graphGetValue(user, GRAPH_BASE + "/sites/" + siteId + "/drive/root/children?$top=" + PAGE_SIZE);
+        }
+        return items.stream()
+            .map(item -> toFileMetadata(item, SHAREPOINT, siteId))
+            .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> graphGetValue(User user, String url) throws Exception {
+        String accessToken = microsoftTokenService.getValidAccessToken(user);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(accessToken);
+
+        Map<String, Object> body = restTemplate.exchange(URI.create(url), HttpMethod.GET, new HttpEntity<>(headers), Map.class)
+            .getBody();
+        Object value = body != null ? body.get("value") : null;
+        return value instanceof List ? (List<Map<String, Object>>) value : List.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FileMetadataDto toFileMetadata(Map<String, Object> item, String provider, String siteId) {
+        Map<String, Object> file = (Map<String, Object>) item.get("file");
+        String mimeType = file != null ? (String) file.get("mimeType") : item.containsKey("folder") ? "folder" : null;
+        Object size = item.get("size");
+        Object downloadUrl = item.getOrDefault("@microsoft.graph.downloadUrl", item.get("webUrl"));
+
+        FileMetadataDto dto = new FileMetadataDto(
+            (String) item.get("id"),
+            (String) item.get("name"),
+            mimeType,
+            size instanceof Number ? ((Number) size).longValue() : null,
+            (String) downloadUrl
+        );
+        if (file != null && file.get("hashes") instanceof Map<?, ?> hashes) {
+            dto.setChecksum((String) hashes.get("quickXorHash"));
+        }
+        dto.setRevision((String) item.get("cTag"));
+        if (item.get("lastModifiedDateTime") instanceof String lastModified) {
+            dto.setModifiedTime(OffsetDateTime.parse(lastModified).toInstant());
+        }
+        dto.setProvider(provider);
+        dto.setSiteId(siteId);
+        // Our cached thumbnail proxy, versioned by cTag so edited content gets a new URL
+        if (file != null) {
+            String url = siteId != null
+                ? "/api/microsoft/sites/" + siteId + "/items/" + dto.getId() + "/thumbnail"
+                : "/api/microsoft/items/" + dto.getId() + "/thumbnail";
+            dto.setThumbnailUrl(dto.getRevision() != null
+                ? url + "?v=" + URLEncoder.encode(dto.getRevision(), StandardCharsets.UTF_8) : url);
+        }
+        return dto;
+    }
+
+    @FunctionalInterface
+    private interface ProviderTask {
+        void run() throws Exception;
+    }
+
+    private static class ProviderCall {
+        private final String provider;
+        private final long startedNanos;
+        private final Queue<FileMetadataDto> files = new ConcurrentLinkedQueue<>();
+        private final Queue<Future<?>> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean cancelled;
+        private volatile CompletableFuture<?> future;
+        private volatile long finishedNanos;
+        private List<FileMetadataDto> snapshot = List.of();
+
+        ProviderCall(String provider, long startedNanos) {
+            this.provider = provider;
+            this.startedNanos = startedNanos;
+        }
+
+        CompletableFuture<?> future() {
+            return future;
+        }
+
+        // A task submitted while cancel() ran is caught by the second check
+        void track(Future<?> task) {
+            tasks.add(task);
+            if (cancelled) {
+                task.cancel(true);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            tasks.forEach(task -> task.cancel(true));
+            future.cancel(false);
+        }
+
+        void addAll(List<FileMetadataDto> batch) {
+            files.addAll(batch);
+        }
+
+        // Items as of the last status() call; sites finishing after the deadline aren't included
+        List<FileMetadataDto> files() {
+            return snapshot;
+        }
+
+        ProviderStatusDto status() {
+            snapshot = new ArrayList<>(files);
+            long end = future.isDone() ? finishedNanos : System.nanoTime();
+            long elapsedMs = Duration.ofNanos(end - startedNanos).toMillis();
+
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                return new ProviderStatusDto(provider, "ok", snapshot.size(), elapsedMs, null);
+            }
+            if (future.isCompletedExceptionally()) {
+                String error = errorMessage(future);
+                // Some SharePoint sites may have failed while others returned items
+                String state = !snapshot.isEmpty() ? "partial"
+                    : isUnavailable(future) ? "unavailable" : "error";
+                return new ProviderStatusDto(provider, state, snapshot.size(), elapsedMs, error);
+            }
+            cancel();
+            return new ProviderStatusDto(provider, snapshot.isEmpty() ? "timeout" : "partial",
+                                         snapshot.size(), elapsedMs, "Deadline exceeded");
+        }
+
+        // Circuit open or bulkhead full; nothing was sent to the provider
+        private static boolean isUnavailable(CompletableFuture<?> future) {
+            try {
+                future.join();
+                return false;
+            } catch (RuntimeException e) {
+                return ProviderUnavailableException.causeOf(e).isPresent();
+            }
+        }
+
+        private static String errorMessage(CompletableFuture<?> future) {
+            try {
+                future.join();
+                return null;
+            } catch (CompletionException e) {
+                Throwable cause = e;
+                while (cause.getCause() != null && (cause instanceof CompletionException || cause instanceof ExecutionException)) {
+                    cause = cause.getCause();
+                }
+                return cause.getMessage();
+            } catch (RuntimeException e) {
+                return e.getMessage();
+            }
+        }
+    }
+}
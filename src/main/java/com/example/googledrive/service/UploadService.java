@@ -0,0 +1,613 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.config.OutboundHttpProperties;
+import com.example.googledrive.dto.UploadRequestDto;
+import com.example.googledrive.dto.UploadStatusDto;
+import com.example.googledrive.model.TokenProvider;
+import com.example.googledrive.model.UploadSession;
+import com.example.googledrive.model.User;
+import com.example.googledrive.repository.UploadSessionRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.EmptyContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.services.drive.Drive;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+// Resumable uploads into Drive (resumable sessions) and OneDrive/SharePoint (Graph upload
+// sessions). The request body is read in provider-sized chunks into two buffers: while one
+// chunk is on its way to the provider the next is read from the client. Chunks are sent
+// straight from those buffers, so heap use is two chunks per upload whatever the file size. A session only takes its chunks in order, so
+// there is never more than one in flight. The session URL is stored, and a client that lost
+// its connection asks where the upload stands and sends the rest from there.
+@Service
+public class UploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadService.class);
+
+    // Drive takes chunks in multiples of 256 KiB, Graph in multiples of 320 KiB up to 60 MiB
+    private static final int GOOGLE_CHUNK_UNIT = 256 * 1024;
+    private static final int GRAPH_CHUNK_UNIT = 320 * 1024;
+    private static final int GRAPH_MAX_CHUNK = 60 * 1024 * 1024;
+    private static final int MAX_CHUNK_ATTEMPTS = 4;
+    private static final long RETRY_BACKOFF_MS = 1000;
+    // Drive keeps a resumable session for a week; Graph tells us its expiry
+    private static final Duration GOOGLE_SESSION_LIFETIME = Duration.ofDays(7);
+    private static final String DRIVE_UPLOAD_URL =
+        "https://www.googleapis.com/upload/drive/v3/files?uploadType=resumable&supportsAllDrives=true&fields=id,name,mimeType,size";
+
+    @Autowired
+    private DriveClientRegistry driveClientRegistry;
+
+    @Autowired
+    private MicrosoftTokenService microsoftTokenService;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private HttpClient outboundHttpClient;
+
+    @Autowired
+    private OutboundHttpProperties outboundHttpProperties;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JsonFactory jsonFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("uploadExecutor")
+    private ThreadPoolTaskExecutor uploadExecutor;
+
+    @Value("${upload.chunk-bytes.google:8388608}")
+    private int googleChunkBytes;
+
+    @Value("${upload.chunk-bytes.microsoft:10485760}")
+    private int microsoftChunkBytes;
+
+    // Uploads streaming at once; bounds the heap at two chunks each
+    @Value("${upload.max-active:8}")
+    private int maxActive;
+
+    private Semaphore active;
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    // Where an upload stands after a chunk or a status query; fileId is set once it's complete
+    private record Progress(long committed, String fileId, LocalDateTime expiresAt) {}
+
+    // The provider no longer knows the session (expired, or cancelled elsewhere)
+    public static class SessionExpiredException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public SessionExpiredException(String message) {
+            super(message);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        active = new Semaphore(maxActive);
+        // Round configured sizes down to what the providers accept
+        googleChunkBytes = Math.max(GOOGLE_CHUNK_UNIT, googleChunkBytes - googleChunkBytes % GOOGLE_CHUNK_UNIT);
+        microsoftChunkBytes = Math.min(GRAPH_MAX_CHUNK - GRAPH_MAX_CHUNK % GRAPH_CHUNK_UNIT,
+            Math.max(GRAPH_CHUNK_UNIT, microsoftChunkBytes - microsoftChunkBytes % GRAPH_CHUNK_UNIT));
+    }
+
+    public UploadStatusDto createSession(User user, UploadRequestDto request) throws Exception {
+        String name = request.getName();
+        if (name == null || name.isBlank() || name.contains("/") || name.contains("\\")) {
+            throw new IllegalArgumentException("A file name without slashes is required");
+        }
+        if (request.getSize() == null || request.getSize() <= 0) {
+            throw new IllegalArgumentException("size must be a positive number of bytes");
+        }
+        String parentId = request.getParentId();
+        if (parentId != null && (parentId.contains("/") || parentId.contains("?") || parentId.contains("#"))) {
+            throw new IllegalArgumentException("Invalid parent id: " + parentId);
+        }
+
+        String provider = request.getProvider() != null ? request.getProvider() : "";
+        UploadSession session;
+        switch (provider) {
+            case "google" -> {
+                session = new UploadSession(user, TokenProvider.GOOGLE, null, name, request.getMimeType(), request.getSize());
+                session.setUploadUrl(startDriveSession(user, session, parentId));
+                session.setExpiresAt(LocalDateTime.now().plus(GOOGLE_SESSION_LIFETIME));
+            }
+            case "onedrive", "sharepoint" -> {
+                String driveKey = GraphSyncService.MY_DRIVE;
+                if (provider.equals("sharepoint")) {
+                    if (request.getSiteId() == null || request.getSiteId().isBlank()) {
+                        throw new IllegalArgumentException("SharePoint uploads need a siteId");
+                    }
+                    driveKey = GraphSyncService.siteDriveKey(request.getSiteId());
+                }
+                session = new UploadSession(user, TokenProvider.MICROSOFT, driveKey, name, request.getMimeType(), request.getSize());
+                startGraphSession(user, session, parentId);
+            }
+            default -> throw new IllegalArgumentException("provider must be google, onedrive or sharepoint");
+        }
+        return toStatus(uploadSessionRepository.save(session));
+    }
+
+    public List<UploadStatusDto> getActiveUploads(User user) {
+        return uploadSessionRepository.findByUserAndStatusOrderByCreatedAtDesc(user, UploadSession.Status.ACTIVE)
+            .stream().map(this::toStatus).toList();
+    }
+
+    // Asks the provider, not our own record, since a chunk may have landed before a crash
+    public Optional<UploadStatusDto> getStatus(User user, Long id) throws Exception {
+        Optional<UploadSession> found = uploadSessionRepository.findByIdAndUser(id, user);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSession session = found.get();
+        if (session.getStatus() == UploadSession.Status.ACTIVE && !running.contains(id)) {
+            refresh(user, session);
+        }
+        return Optional.of(toStatus(session));
+    }
+
+    // Streams the body, which starts at byte offset of the file, into the session. Bytes the
+    // provider already has are skipped. If the body ends early the upload stays resumable
+    // from the returned offset.
+    public Optional<UploadStatusDto> upload(User user, Long id, long offset, InputStream in) throws Exception {
+        Optional<UploadSession> found = uploadSessionRepository.findByIdAndUser(id, user);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSession session = found.get();
+        if (session.getStatus() == UploadSession.Status.COMPLETED) {
+            return Optional.of(toStatus(session));
+        }
+        if (session.getStatus() != UploadSession.Status.ACTIVE) {
+            throw new IllegalStateException("Upload is " + session.getStatus().name().toLowerCase());
+        }
+        if (!active.tryAcquire()) {
+            throw new RejectedExecutionException("Too many uploads in progress, try again shortly");
+        }
+        try {
+            if (!running.add(id)) {
+                throw new IllegalStateException("This upload is already receiving data");
+            }
+            try {
+                refresh(user, session);
+                if (session.getStatus() != UploadSession.Status.ACTIVE) {
+                    return Optional.of(toStatus(session));
+                }
+                long committed = session.getCommittedBytes();
+                if (offset > committed) {
+                    throw new IllegalStateException("Offset " + offset + " is past the " + committed + " bytes uploaded so far");
+                }
+                try {
+                    in.skipNBytes(committed - offset);
+                } catch (IOException e) {
+                    // Body ended within bytes the provider already has
+                    return Optional.of(toStatus(session));
+                }
+                pump(user, session, in);
+                return Optional.of(toStatus(session));
+            } catch (SessionExpiredException e) {
+                session.setStatus(UploadSession.Status.EXPIRED);
+                save(session);
+                throw e;
+            } finally {
+                running.remove(id);
+            }
+        } finally {
+            active.release();
+        }
+    }
+
+    public Optional<UploadStatusDto> cancel(User user, Long id) {
+        Optional<UploadSession> found = uploadSessionRepository.findByIdAndUser(id, user);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSession session = found.get();
+        if (session.getStatus() == UploadSession.Status.ACTIVE) {
+            if (running.contains(id)) {
+                throw new IllegalStateException("This upload is receiving data; stop sending before cancelling");
+            }
+            try {
+                cancelRemote(user, session);
+            } catch (Exception e) {
+                // The session expires on its own; nothing is committed until the last chunk
+                log.debug("Cancelling upload {} at the provider failed: {}", id, e.getMessage());
+            }
+            session.setStatus(UploadSession.Status.CANCELLED);
+            save(session);
+        }
+        return Optional.of(toStatus(session));
+    }
+
+    @Scheduled(fixedDelayString = "${upload.cleanup-interval-ms:3600000}")
+    public void purgeExpiredSessions() {
+        Integer removed = transactionTemplate.execute(status ->
+            uploadSessionRepository.deleteExpiredBefore(LocalDateTime.now()));
+        if (removed != null && removed > 0) {
+            log.info("Removed {} expired upload sessions", removed);
+        }
+    }
+
+    // Reads chunk n+1 from the client while chunk n is being sent. Progress is saved after
+    // every chunk, so a restart loses at most the chunk that was in flight.
+    private void pump(User user, UploadSession session, InputStream in) throws Exception {
+        int chunkSize = chunkSize(session);
+        byte[][] buffers = {new byte[chunkSize], new byte[chunkSize]};
+        long total = session.getTotalSize();
+        long next = session.getCommittedBytes();
+        int current = 0;
+        Future<Progress> inFlight = null;
+        boolean inputEnded = false;
+
+        while (next < total && !inputEnded) {
+            byte[] buffer = buffers[current];
+            int wanted = (int) Math.min(chunkSize, total - next);
+            int filled = readFully(in, buffer, wanted);
+            if (filled < wanted) {
+                // Client stopped early or went away; only whole units can go as a non-final chunk
+                inputEnded = true;
+                filled -= filled % chunkUnit(session);
+            }
+            if (inFlight != null) {
+                apply(session, await(inFlight));
+                save(session);
+                inFlight = null;
+            }
+            if (filled == 0) {
+                break;
+            }
+            long start = next;
+            int length = filled;
+            inFlight = uploadExecutor.submit(() -> sendChunk(user, session, buffer, length, start));
+            next += filled;
+            current ^= 1;
+        }
+        if (inFlight != null) {
+            apply(session, await(inFlight));
+            save(session);
+        }
+    }
+
+    private Progress sendChunk(User user, UploadSession session, byte[] buffer, int length, long start) throws Exception {
+        long end = start + length;
+        long position = start;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                int skip = (int) (position - start);
+                Progress progress = session.getProvider() == TokenProvider.GOOGLE
+                    ? sendDriveChunk(user, session, buffer, skip, length - skip, position)
+                    : sendGraphChunk(session, buffer, skip, length - skip, position);
+                if (progress.fileId() != null || progress.committed() >= end) {
+                    return progress;
+                }
+                if (progress.committed() < position || attempt >= MAX_CHUNK_ATTEMPTS) {
+                    throw new IllegalStateException("Provider kept " + progress.committed() + " bytes, expected " + end);
+                }
+                // Provider kept only part of the chunk; send the rest
+                position = progress.committed();
+            } catch (Exception e) {
+                if (attempt >= MAX_CHUNK_ATTEMPTS || !isRetryable(e)) {
+                    throw e;
+                }
+                log.debug("Upload {} chunk at {} failed (attempt {}): {}", session.getId(), position, attempt, e.getMessage());
+                Thread.sleep(RETRY_BACKOFF_MS * attempt);
+                Progress progress = queryProgress(user, session);
+                if (progress.fileId() != null || progress.committed() >= end) {
+                    return progress;
+                }
+                if (progress.committed() < start) {
+                    throw new IllegalStateException("Provider has " + progress.committed() + " bytes, chunk starts at " + start);
+                }
+                position = progress.committed();
+            }
+        }
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (ProviderUnavailableException.causeOf(e).isPresent()) {
+            return false;
+        }
+        return e instanceof IOException && !(e instanceof InterruptedIOException);
+    }
+
+    private void refresh(User user, UploadSession session) throws Exception {
+        try {
+            apply(session, queryProgress(user, session));
+        } catch (SessionExpiredException e) {
+            session.setStatus(UploadSession.Status.EXPIRED);
+            save(session);
+            throw e;
+        }
+        save(session);
+    }
+
+    private Progress queryProgress(User user, UploadSession session) throws Exception {
+        return session.getProvider() == TokenProvider.GOOGLE
+            ? queryDriveProgress(user, session)
+            : queryGraphProgress(session);
+    }
+
+    private void cancelRemote(User user, UploadSession session) throws Exception {
+        if (session.getProvider() == TokenProvider.GOOGLE) {
+            Drive drive = driveClientRegistry.getDrive(user);
+            HttpRequest request = drive.getRequestFactory().buildDeleteRequest(new GenericUrl(session.getUploadUrl()));
+            request.setThrowExceptionOnExecuteError(false);
+            request.execute().disconnect();
+        } else {
+            outboundHttpClient.send(java.net.http.HttpRequest.newBuilder(URI.create(session.getUploadUrl()))
+                .timeout(Duration.ofMillis(outboundHttpProperties.getReadTimeoutMs()))
+                .DELETE()
+                .build(), BodyHandlers.discarding());
+        }
+    }
+
+    // Drive
+
+    private String startDriveSession(User user, UploadSession session, String parentId) throws Exception {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("name", session.getFileName());
+        if (session.getMimeType() != null) {
+            metadata.put("mimeType", session.getMimeType());
+        }
+        if (parentId != null) {
+            metadata.put("parents", List.of(parentId));
+        }
+
+        Drive drive = driveClientRegistry.getDrive(user);
+        HttpRequest request = drive.getRequestFactory()
+            .buildPostRequest(new GenericUrl(DRIVE_UPLOAD_URL), new JsonHttpContent(jsonFactory, metadata));
+        request.getHeaders().set("X-Upload-Content-Length", session.getTotalSize());
+        if (session.getMimeType() != null) {
+            request.getHeaders().set("X-Upload-Content-Type", session.getMimeType());
+        }
+        HttpResponse response = request.execute();
+        try {
+            String location = response.getHeaders().getLocation();
+            if (location == null) {
+                throw new IllegalStateException("Drive did not return an upload session");
+            }
+            return location;
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private Progress sendDriveChunk(User user, UploadSession session, byte[] buffer, int offset, int length, long start) throws Exception {
+        Drive drive = driveClientRegistry.getDrive(user);
+        HttpRequest request = drive.getRequestFactory().buildPutRequest(
+            new GenericUrl(session.getUploadUrl()), new ByteArrayContent(session.getMimeType(), buffer, offset, length));
+        request.getHeaders().setContentRange("bytes " + start + "-" + (start + length - 1) + "/" + session.getTotalSize());
+        return driveProgress(request, session);
+    }
+
+    private Progress queryDriveProgress(User user, UploadSession session) throws Exception {
+        Drive drive = driveClientRegistry.getDrive(user);
+        HttpRequest request = drive.getRequestFactory().buildPutRequest(new GenericUrl(session.getUploadUrl()), new EmptyContent());
+        request.getHeaders().setContentRange("bytes */" + session.getTotalSize());
+        return driveProgress(request, session);
+    }
+
+    // 308 means incomplete, with Range naming what Drive has; 200/201 carry the new file
+    private Progress driveProgress(HttpRequest request, UploadSession session) throws IOException {
+        request.setThrowExceptionOnExecuteError(false);
+        request.setFollowRedirects(false);
+        request.setParser(jsonFactory.createJsonObjectParser());
+        HttpResponse response = request.execute();
+        try {
+            int status = response.getStatusCode();
+            if (status == 200 || status == 201) {
+                GenericJson file = response.parseAs(GenericJson.class);
+                return new Progress(session.getTotalSize(), (String) file.get("id"), null);
+            }
+            if (status == 308) {
+                String range = response.getHeaders().getRange();
+                long committed = range == null ? 0 : Long.parseLong(range.substring(range.lastIndexOf('-') + 1)) + 1;
+                return new Progress(committed, null, null);
+            }
+            if (status == 404 || status == 410) {
+                throw new SessionExpiredException("Drive upload session has expired");
+            }
+            if (status >= 500) {
+                throw new IOException("Drive upload failed with status " + status);
+            }
+            throw new IllegalStateException("Drive rejected the upload with status " + status + ": " + response.parseAsString());
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    // Graph
+
+    private void startGraphSession(User user, UploadSession session, String parentId) throws Exception {
+        String parent = parentId != null ? "/items/" + parentId : "/root";
+        URI uri = URI.create(GraphSyncService.driveUrl(session.getDriveKey()) + parent + ":/"
+            + UriUtils.encodePathSegment(session.getFileName(), StandardCharsets.UTF_8) + ":/createUploadSession");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(microsoftTokenService.getValidAccessToken(user));
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        Map<String, Object> body = Map.of("item", Map.of("@microsoft.graph.conflictBehavior", "rename"));
+
+        JsonNode response = restTemplate.exchange(uri, HttpMethod.POST, new HttpEntity<>(body, headers), JsonNode.class).getBody();
+        if (response == null || !response.hasNonNull("uploadUrl")) {
+            throw new IllegalStateException("Microsoft Graph did not return an upload session");
+        }
+        session.setUploadUrl(response.get("uploadUrl").asText());
+        session.setExpiresAt(expiry(response));
+    }
+
+    // The upload URL is pre-authenticated, so it goes through the plain JDK client rather than
+    // the Graph RestTemplate: no bearer token, and no interceptor buffering a copy of the body.
+    // The publisher reads the chunk straight from our buffer. No request timeout here, since
+    // sending the chunk takes as long as the uplink needs; the upload URL expires on its own.
+    private Progress sendGraphChunk(UploadSession session, byte[] buffer, int offset, int length, long start) throws Exception {
+        java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder(URI.create(session.getUploadUrl()))
+            .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + session.getTotalSize())
+            .PUT(BodyPublishers.ofByteArray(buffer, offset, length))
+            .build();
+        return graphProgress(outboundHttpClient.send(request, BodyHandlers.ofByteArray()), session);
+    }
+
+    private Progress queryGraphProgress(UploadSession session) throws Exception {
+        java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder(URI.create(session.getUploadUrl()))
+            .timeout(Duration.ofMillis(outboundHttpProperties.getReadTimeoutMs()))
+            .GET()
+            .build();
+        return graphProgress(outboundHttpClient.send(request, BodyHandlers.ofByteArray()), session);
+    }
+
+    // 202 and status queries list nextExpectedRanges; 200/201 carry the new item
+    private Progress graphProgress(java.net.http.HttpResponse<byte[]> response, UploadSession session) throws IOException {
+        int status = response.statusCode();
+        if (status == 404) {
+            throw new SessionExpiredException("Microsoft upload session has expired");
+        }
+        // 416: part of the range had already arrived; retried from what Graph reports
+        if (status >= 500 || status == 416) {
+            throw new IOException("Microsoft upload failed with status " + status);
+        }
+        if (status >= 400) {
+            throw new IllegalStateException("Microsoft rejected the upload with status " + status + ": "
+                + new String(response.body(), StandardCharsets.UTF_8));
+        }
+
+        JsonNode json = objectMapper.readTree(response.body());
+        if ((status == 200 || status == 201) && json.hasNonNull("id") && !json.has("nextExpectedRanges")) {
+            return new Progress(session.getTotalSize(), json.get("id").asText(), null);
+        }
+        JsonNode ranges = json.path("nextExpectedRanges");
+        long committed = session.getTotalSize();
+        if (ranges.isArray() && !ranges.isEmpty()) {
+            String range = ranges.get(0).asText();
+            committed = Long.parseLong(range.substring(0, range.indexOf('-')));
+        }
+        return new Progress(committed, null, expiry(json));
+    }
+
+    private static LocalDateTime expiry(JsonNode json) {
+        if (!json.hasNonNull("expirationDateTime")) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(OffsetDateTime.parse(json.get("expirationDateTime").asText()).toInstant(),
+            ZoneId.systemDefault());
+    }
+
+    // Helpers
+
+    private int chunkSize(UploadSession session) {
+        return session.getProvider() == TokenProvider.GOOGLE ? googleChunkBytes : microsoftChunkBytes;
+    }
+
+    private static int chunkUnit(UploadSession session) {
+        return session.getProvider() == TokenProvider.GOOGLE ? GOOGLE_CHUNK_UNIT : GRAPH_CHUNK_UNIT;
+    }
+
+    // Reads until the buffer holds length bytes or the body ends; a broken connection
+    // counts as the end, so what did arrive can still be sent
+    private static int readFully(InputStream in, byte[] buffer, int length) {
+        int filled = 0;
+        try {
+            int read;
+            while (filled < length && (read = in.read(buffer, filled, length - filled)) != -1) {
+                filled += read;
+            }
+        } catch (IOException e) {
+            log.debug("Upload body ended early after {} bytes of a chunk: {}", filled, e.getMessage());
+        }
+        return filled;
+    }
+
+    private static Progress await(Future<Progress> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during upload");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void apply(UploadSession session, Progress progress) {
+        session.setCommittedBytes(progress.committed());
+        if (progress.fileId() != null) {
+            session.setStatus(UploadSession.Status.COMPLETED);
+            session.setResultFileId(progress.fileId());
+            session.setCommittedBytes(session.getTotalSize());
+        }
+        if (progress.expiresAt() != null) {
+            session.setExpiresAt(progress.expiresAt());
+        }
+    }
+
+    private void save(UploadSession session) {
+        session.setUpdatedAt(LocalDateTime.now());
+        uploadSessionRepository.save(session);
+    }
+
+    private UploadStatusDto toStatus(UploadSession session) {
+        String provider = session.getProvider() == TokenProvider.GOOGLE ? "google"
+            : GraphSyncService.MY_DRIVE.equals(session.getDriveKey()) ? "onedrive" : "sharepoint";
+        return new UploadStatusDto(session.getId(), provider, session.getFileName(), session.getTotalSize(),
+            session.getCommittedBytes(), session.getStatus().name().toLowerCase(), session.getResultFileId(),
+            session.getExpiresAt());
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.googledrive.service;
+
+import com.example.googledrive.dto.FileMetadataDto;
+import com.example.googledrive.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Builds a ZIP of files from any provider straight onto the response. The next few files are
+// fetched in parallel while the current one is written, each through a small bounded pipe,
+// so upstream latency overlaps and memory stays at a few MB per download whatever the sizes.
+// Files that fail are left out (or cut short, if they fail midway) and listed in manifest.json.
+// Each download holds up to `prefetch` threads of the shared pool for as long as the client
+// takes to read it, so downloads are admitted up front (per server and per user) and turned
+// away with a 503 when the pool is spoken for, rather than starting and skipping files.
+@Service
+public class ZipExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ZipExportService.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Chunks buffered per prefetched file
+    private static final int PIPE_CHUNKS = 16;
+    private static final String MANIFEST_NAME = "manifest.json";
+
+    @Autowired
+    private GoogleDriveService googleDriveService;
+
+    @Autowired
+    private GraphDownloadService graphDownloadService;
+
+    @Autowired
+    private FileContentCache fileContentCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("zipPrefetchExecutor")
+    private ThreadPoolTaskExecutor zipPrefetchExecutor;
+
+    @Value("${download.zip.threads:32}")
+    private int threads;
+
+    @Value("${download.zip.prefetch:4}")
+    private int prefetch;
+
+    @Value("${download.zip.max-per-user:2}")
+    private int maxPerUser;
+
+    private Semaphore active;
+    private final Map<Long, Integer> activeByUser = new ConcurrentHashMap<>();
+
+    // A download admitted by reserve(); writeZip gives it back when the ZIP ends
+    public static final class Reservation {
+        private final User user;
+        private boolean released;
+
+        private Reservation(User user) {
+            this.user = user;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        prefetch = Math.max(1, Math.min(prefetch, threads));
+        // Every admitted download can have all its prefetches running, so none ever queues
+        active = new Semaphore(Math.max(1, threads / prefetch));
+    }
+
+    public Reservation reserve(User user) {
+        Long userId = user.getId();
+        Integer mine = activeByUser.merge(userId, 1, Integer::sum);
+        if (mine > maxPerUser) {
+            activeByUser.computeIfPresent(userId, (id, n) -> n > 1 ? n - 1 : null);
+            throw new RejectedExecutionException("Too many ZIP downloads in progress for this user, try again shortly");
+        }
+        if (!active.tryAcquire()) {
+            activeByUser.computeIfPresent(userId, (id, n) -> n > 1 ? n - 1 : null);
+            throw new RejectedExecutionException("Too many ZIP downloads in progress, try again shortly");
+        }
+        return new Reservation(user);
+    }
+
+    private void release(Reservation reservation) {
+        if (!reservation.released) {
+            reservation.released = true;
+            activeByUser.computeIfPresent(reservation.user.getId(), (id, n) -> n > 1 ? n - 1 : null);
+            active.release();
+        }
+    }
+
+    public void writeZip(Reservation reservation, List<FileMetadataDto> files, OutputStream out) throws IOException {
+        try {
+            writeZip(reservation.user, files, out);
+        } finally {
+            release(reservation);
+        }
+    }
+
+    private void writeZip(User user, List<FileMetadataDto> files, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        List<Map<String, Object>> manifest = new ArrayList<>();
+        Set<String> usedNames = new HashSet<>();
+
+        Iterator<FileMetadataDto> pending = files.iterator();
+        Deque<Prefetch> window = new ArrayDeque<>();
+        Prefetch current = null;
+        try {
+            // The file being written counts towards prefetch, so a download never runs more
+            // fetches than it was admitted for
+            while (pending.hasNext() && window.size() < prefetch) {
+                window.add(start(user, pending.next()));
+            }
+            while (!window.isEmpty()) {
+                current = window.poll();
+                manifest.add(writeEntry(zip, current, usedNames));
+                current = null;
+                if (pending.hasNext()) {
+                    window.add(start(user, pending.next()));
+                }
+            }
+
+            ZipEntry manifestEntry = new ZipEntry(uniqueName(MANIFEST_NAME, usedNames));
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(manifestEntry);
+            zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            zip.closeEntry();
+            zip.finish();
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // Client went away or we failed; stop every prefetch still holding a connection
+            if (current != null) {
+                current.abort();
+            }
+            window.forEach(Prefetch::abort);
+            throw e;
+        }
+    }
+
+    private Map<String, Object> writeEntry(ZipOutputStream zip, Prefetch prefetch, Set<String> usedNames) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("provider", prefetch.file.getProvider());
+        result.put("id", prefetch.file.getId());
+
+        FileMetadataDto metadata;
+        byte[] chunk;
+        try {
+            metadata = prefetch.metadata.join();
+            chunk = prefetch.pipe.take();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            result.put("status", "error");
+            result.put("error", cause.getMessage());
+            return result;
+        }
+        // Nothing written yet, so a file that failed before its first byte leaves no entry
+        if (chunk == Pipe.EOF && prefetch.pipe.failure != null) {
+            result.put("status", "error");
+            result.put("error", prefetch.pipe.failure.getMessage());
+            return result;
+        }
+
+        String name = uniqueName(metadata.getName() != null ? metadata.getName() : prefetch.file.getId(), usedNames);
+        result.put("name", name);
+        ZipEntry entry = new ZipEntry(name);
+        if (metadata.getModifiedTime() != null) {
+            entry.setLastModifiedTime(FileTime.from(metadata.getModifiedTime()));
+        }
+        zip.setLevel(isCompressed(metadata.getMimeType()) ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+        zip.putNextEntry(entry);
+
+        long written = 0;
+        while (chunk != Pipe.EOF) {
+            zip.write(chunk);
+            written += chunk.length;
+            chunk = prefetch.pipe.take();
+        }
+        zip.closeEntry();
+
+        result.put("size", written);
+        if (prefetch.pipe.failure != null) {
+            result.put("status", "truncated");
+            result.put("error", "Transfer failed after " + written + " bytes: " + prefetch.pipe.failure.getMessage());
+        } else {
+            result.put("status", "ok");
+        }
+        return result;
+    }
+
+    // Admission keeps the pool from filling up, so a rejection here means the executor is
+    // shutting down; the download fails rather than quietly leaving files out
+    private Prefetch start(User user, FileMetadataDto file) {
+        Prefetch prefetch = new Prefetch(file);
+        prefetch.task = zipPrefetchExecutor.submit(() -> fetch(user, prefetch));
+        return prefetch;
+    }
+
+    private void fetch(User user, Prefetch prefetch) {
+        FileMetadataDto file = prefetch.file;
+        try {
+            String provider = file.getProvider() != null ? file.getProvider() : "";
+            switch (provider) {
+                case "google" -> {
+                    FileMetadataDto metadata = googleDriveService.getDownloadMetadata(user, file.getId());
+                    prefetch.metadata.complete(metadata);
+                    Optional<Path> cached = cached("google", metadata);
+                    if (cached.isPresent()) {
+                        fileContentCache.transfer(cached.get(), 0, metadata.getSize(), prefetch.pipe);
+                    } else {
+                        googleDriveService.streamFileContent(user, file.getId(), null, null, prefetch.pipe);
+                    }
+                }
+                case "onedrive", "sharepoint" -> {
+                    String driveKey = provider.equals("onedrive") ? GraphSyncService.MY_DRIVE
+                        : GraphSyncService.siteDriveKey(requireSiteId(file));
+                    FileMetadataDto metadata = graphDownloadService.getDownloadMetadata(user, driveKey, file.getId());
+                    prefetch.metadata.complete(metadata);
+                    Optional<Path> cached = cached("microsoft", metadata);
+                    if (cached.isPresent()) {
+                        fileContentCache.transfer(cached.get(), 0, metadata.getSize(), prefetch.pipe);
+                    } else {
+                        String contentUrl = graphDownloadService.resolveContentUrl(user, driveKey, metadata);
+                        if (contentUrl == null) {
+                            throw new IOException("Item has no downloadable content");
+                        }
+                        graphDownloadService.streamContent(contentUrl, null, null, prefetch.pipe);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown provider: " + file.getProvider());
+            }
+            prefetch.pipe.finish(null);
+        } catch (Exception e) {
+            if (!prefetch.pipe.aborted) {
+                log.debug("ZIP entry {}:{} failed: {}", file.getProvider(), file.getId(), e.getMessage());
+            }
+            prefetch.metadata.completeExceptionally(e);
+            prefetch.pipe.finish(e);
+        }
+    }
+
+    private Optional<Path> cached(String provider, FileMetadataDto metadata) {
+        String key = fileContentCache.key(provider, metadata.getChecksum(), metadata.getRevision(), metadata.getSize());
+        return key != null ? fileContentCache.lookup(key) : Optional.empty();
+    }
+
+    private static String requireSiteId(FileMetadataDto file) {
+        if (file.getSiteId() == null || file.getSiteId().isBlank()) {
+            throw new IllegalArgumentException("SharePoint items need a siteId");
+        }
+        return file.getSiteId();
+    }
+
+    // Flat archive; names are made safe and unique with a " (n)" suffix before the extension
+    private static String uniqueName(String name, Set<String> usedNames) {
+        String safe = name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        if (safe.isEmpty() || safe.equals(".") || safe.equals("..")) {
+            safe = "file";
+        }
+        String candidate = safe;
+        int dot = safe.lastIndexOf('.');
+        String base = dot > 0 ? safe.substring(0, dot) : safe;
+        String extension = dot > 0 ? safe.substring(dot) : "";
+        for (int n = 2; !usedNames.add(candidate.toLowerCase(Locale.ROOT)); n++) {
+            candidate = base + " (" + n + ")" + extension;
+        }
+        return candidate;
+    }
+
+    // Deflating already-compressed formats costs CPU for nothing
+    private static boolean isCompressed(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        return mimeType.startsWith("image/") || mimeType.startsWith("video/") || mimeType.startsWith("audio/")
+            || mimeType.startsWith("application/vnd.openxmlformats-officedocument.")
+            || mimeType.equals("application/zip") || mimeType.equals("application/gzip")
+            || mimeType.equals("application/x-7z-compressed") || mimeType.equals("application/x-rar-compressed");
+    }
+
+    private static final class Prefetch {
+        private final FileMetadataDto file;
+        private final CompletableFuture<FileMetadataDto> metadata = new CompletableFuture<>();
+        private final Pipe pipe = new Pipe();
+        private volatile Future<?> task;
+
+        Prefetch(FileMetadataDto file) {
+            this.file = file;
+        }
+
+        void abort() {
+            pipe.abort();
+            Future<?> running = task;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+    }
+
+    // Bounded single-producer, single-consumer byte pipe. The producer blocks once
+    // PIPE_CHUNKS chunks are waiting, which throttles the upstream read to the ZIP writer.
+    private static final class Pipe extends OutputStream {
+        static final byte[] EOF = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(PIPE_CHUNKS);
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int length;
+        private volatile boolean aborted;
+        private volatile Exception failure;
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer[length++] = (byte) b;
+            if (length == buffer.length) {
+                push();
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                int n = Math.min(count, buffer.length - length);
+                System.arraycopy(bytes, offset, buffer, length, n);
+                length += n;
+                offset += n;
+                count -= n;
+                if (length == buffer.length) {
+                    push();
+                }
+            }
+        }
+
+        // Called once by the producer; a null failure means the file is complete. Bytes already
+        // received are passed on either way, so a failed file is cut where the transfer broke.
+        void finish(Exception error) {
+            try {
+                if (length > 0) {
+                    push();
+                }
+                failure = error;
+                put(EOF);
+            } catch (IOException e) {
+                // Aborted; nobody is reading any more
+            }
+        }
+
+        byte[] take() throws IOException {
+            try {
+                return chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted building ZIP");
+            }
+        }
+
+        void abort() {
+            aborted = true;
+            chunks.clear();
+        }
+
+        private void push() throws IOException {
+            byte[] chunk = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+            put(chunk);
+            buffer = new byte[CHUNK_SIZE];
+            length = 0;
+        }
+
+        private void put(byte[] chunk) throws IOException {
+            try {
+                while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    if (aborted) {
+                        throw new IOException("ZIP download cancelled");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("ZIP download cancelled");
+            }
+        }
+    }
+}